@@ -0,0 +1,103 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mäter spelets operationer på ett pussel som genereras med ett fast frö.
+ * Operationer som ändrar brädet ångras i samma anrop, så att varje anrop börjar från
+ * samma ställning.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoxesBenchmark {
+    @Param({"9", "16"})
+    public int size;
+
+    private int[][][] sudokuMatrix;
+    private Boxes puzzle;
+    private Boxes partlySolved;
+    private Boxes solved;
+    private int[] emptyCells;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        sudokuMatrix = new SudokuGenerator(size, new Random(42)).generate(SudokuLevel.MEDIUM);
+        puzzle = new Boxes(SudokuLevel.MEDIUM, sudokuMatrix);
+        emptyCells = new int[puzzle.boxesLeftToEnter()];
+        int count = 0;
+        for (int cell = 0; cell < size * size; cell++) {
+            if (puzzle.enteredAt(cell) == 0) emptyCells[count++] = cell;
+        }
+        partlySolved = puzzle.copy();
+        solved = puzzle.copy();
+        for (int i = 0; i < emptyCells.length; i++) {
+            int cell = emptyCells[i];
+            if (i % 2 == 0) partlySolved.enter(cell / size, cell % size, partlySolved.toEnterAt(cell));
+            solved.enter(cell / size, cell % size, solved.toEnterAt(cell));
+        }
+    }
+
+    @Benchmark
+    public Boxes construct() {
+        return new Boxes(SudokuLevel.MEDIUM, sudokuMatrix);
+    }
+
+    @Benchmark
+    public Boxes copy() {
+        return puzzle.copy();
+    }
+
+    @Benchmark
+    public int enterAndClear() {
+        int cell = emptyCells[next];
+        next = next + 1 == emptyCells.length ? 0 : next + 1;
+        puzzle.enter(cell / size, cell % size, puzzle.toEnterAt(cell));
+        puzzle.clear(cell / size, cell % size);
+        return puzzle.boxesLeftToEnter();
+    }
+
+    /**
+     * Check markerar de rätta rutorna som kända, så den körs på en kopia; se {@link #copy()}
+     * för vad kopian kostar.
+     */
+    @Benchmark
+    public boolean check() {
+        return partlySolved.copy().Check();
+    }
+
+    @Benchmark
+    public boolean result() {
+        return solved.result();
+    }
+
+    @Benchmark
+    public Hint hint() {
+        Hint hint = puzzle.hint();
+        puzzle.undo();
+        return hint;
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public Box[][] getBoxes() {
+        return puzzle.getBoxes();
+    }
+}
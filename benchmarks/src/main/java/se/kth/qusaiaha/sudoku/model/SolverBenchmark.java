@@ -0,0 +1,71 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mäter lösaren, Dancing Links, graderingen och generatorn på 9x9-pussel.
+ * Generatorn drar nya pussel från samma frö, så varje anrop mäter ett nytt pussel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+    @Param({"EASY", "HARD"})
+    public SudokuLevel level;
+
+    private final int[] givens = new int[SudokuUtilities.GRID_SIZE * SudokuUtilities.GRID_SIZE];
+    private final int[] solution = new int[givens.length];
+    private final int[] cells = new int[givens.length];
+    private final int[] generatedGivens = new int[givens.length];
+    private final int[] generatedSolution = new int[givens.length];
+    private SudokuSolver solver;
+    private DancingLinks dancingLinks;
+    private SudokuGrader grader;
+    private SudokuGenerator generator;
+
+    @Setup
+    public void setUp() {
+        generator = new SudokuGenerator(42L);
+        generator.generate(level, givens, solution);
+        solver = new SudokuSolver();
+        dancingLinks = new DancingLinks();
+        grader = new SudokuGrader();
+    }
+
+    @Benchmark
+    public boolean solve() {
+        System.arraycopy(givens, 0, cells, 0, cells.length);
+        return solver.solve(cells);
+    }
+
+    @Benchmark
+    public boolean dancingLinksUnique() {
+        return dancingLinks.hasUniqueSolution(givens);
+    }
+
+    @Benchmark
+    public int grade() {
+        return grader.grade(givens);
+    }
+
+    @Benchmark
+    public int generate() {
+        return generator.generate(level, generatedGivens, generatedSolution);
+    }
+}
@@ -0,0 +1,86 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mäter hur spel kodas, avkodas, sparas och laddas, och hur ett pussel i textform tolkas.
+ * Sparningen till fil tvingar ut filen till disken och mäter därför mest disken.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SudokuIOBenchmark {
+    private Boxes game;
+    private ByteBuffer buffer;
+    private ByteBuffer encoded;
+    private String representation;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[][][] sudokuMatrix = new SudokuGenerator(new Random(42)).generate(SudokuLevel.MEDIUM);
+        game = new Boxes(SudokuLevel.MEDIUM, sudokuMatrix);
+        game.hint();
+        buffer = ByteBuffer.allocate(SudokuIO.fileBytes(SudokuIO.VERSION, game.getSize()));
+        encoded = ByteBuffer.allocate(buffer.capacity());
+        SudokuIO.encode(game, encoded);
+        encoded.flip();
+
+        StringBuilder text = new StringBuilder();
+        for (int layer = 0; layer < 2; layer++) {
+            for (int[][] row : sudokuMatrix) {
+                for (int[] cell : row) text.append(cell[layer]);
+            }
+        }
+        representation = text.toString();
+        file = File.createTempFile("benchmark", ".sudoku");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        SudokuIO.encode(game, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public Boxes decode() throws IOException {
+        return SudokuIO.decode(encoded.duplicate());
+    }
+
+    @Benchmark
+    public Boxes saveAndLoad() throws IOException, ClassNotFoundException {
+        SudokuIO.SaveGame(file, game);
+        return SudokuIO.LoadGame(file);
+    }
+
+    @Benchmark
+    public int[][][] convertStringToIntMatrix() {
+        return SudokuUtilities.convertStringToIntMatrix(representation);
+    }
+}
@@ -1,6 +1,8 @@
 module se.kth.qusaiaha.sudoku {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
+    requires jdk.jfr;
 
 
     opens se.kth.qusaiaha.sudoku to javafx.fxml;
@@ -1,51 +1,196 @@
 package se.kth.qusaiaha.sudoku;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 import se.kth.qusaiaha.sudoku.controller.Controller;
 import se.kth.qusaiaha.sudoku.model.Boxes;
+import se.kth.qusaiaha.sudoku.model.GameJournal;
+import se.kth.qusaiaha.sudoku.model.LatencyHistogram;
+import se.kth.qusaiaha.sudoku.model.Metrics;
+import se.kth.qusaiaha.sudoku.model.PuzzlePool;
 import se.kth.qusaiaha.sudoku.model.SudokuLevel;
-import se.kth.qusaiaha.sudoku.model.SudokuUtilities;
+import se.kth.qusaiaha.sudoku.view.BoardView;
 import se.kth.qusaiaha.sudoku.view.Buttons;
+import se.kth.qusaiaha.sudoku.view.CanvasGridView;
+import se.kth.qusaiaha.sudoku.view.FrameTimer;
 import se.kth.qusaiaha.sudoku.view.GridView;
 import se.kth.qusaiaha.sudoku.view.MenuView;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Startar Sudoku-spelet.
+ * <p>
+ * Brädet ritas med Labels som standard. Med {@code --renderer=canvas} (eller
+ * {@code -Dsudoku.renderer=canvas}) ritas det på en enda Canvas i stället.
+ * Med {@code --frameTimes=true} (eller {@code -Dsudoku.frameTimes=true}) mäts tiden
+ * per bildruta och skrivs ut när programmet avslutas.
+ * <p>
+ * Det pågående spelet sparas automatiskt i {@code ~/.sudoku}, eller i katalogen som anges med
+ * {@code --saveDir=} (eller {@code -Dsudoku.saveDir=}), och återskapas vid nästa start om det
+ * inte var löst.
+ * <p>
+ * Tiderna och räknarna i {@link Metrics} visas under Help &gt; Diagnostics. Med
+ * {@code --metricsFile=} (eller {@code -Dsudoku.metricsFile=}) skrivs de också till en fil var
+ * tionde sekund och när programmet avslutas, och med {@code --metricsJfr=true} (eller
+ * {@code -Dsudoku.metricsJfr=true}) skickas de till JDK Flight Recorder medan en inspelning pågår.
+ * <p>
+ * Fönstret visas direkt med en platshållare. Det första spelet återskapas eller genereras och
+ * vyerna byggs i en bakgrundstråd, och sedan byts platshållaren ut. Tiden från JVM-starten
+ * till båda stegen finns i {@link Metrics} som {@code startup.windowShown} och
+ * {@code startup.gameReady}. Med {@code --exitAfterStartup=true} (eller
+ * {@code -Dsudoku.exitAfterStartup=true}) avslutas programmet när spelet har ritats, vilket
+ * används för att träna CDS-arkivet i Maven-profilen {@code cds}. Med det eller med
+ * {@code --frameTimes=true} skrivs tiderna också ut.
+ */
 public class HelloApplication extends Application{
-    private GridView gridView;
+    private static final long METRICS_DUMP_MILLIS = 10_000;
+    private static final LatencyHistogram WINDOW_SHOWN = Metrics.histogram("startup.windowShown");
+    private static final LatencyHistogram GAME_READY = Metrics.histogram("startup.gameReady");
+    private BoardView gridView;
     private Buttons buttons;
     private MenuView menuView;
     private BorderPane borderpane;
     private Controller controller;
     private Boxes model;
+    private PuzzlePool puzzlePool;
+    private FrameTimer frameTimer;
+    private GameJournal journal;
     public static void main(String[] arg) {
 
-        launch();
+        launch(arg);
     }
 
     @Override
     public void start(Stage stage) throws Exception {
-        this.model = new Boxes(SudokuLevel.EASY);
-        initializeTheView();
-        controller = new Controller(model,gridView,buttons,menuView,stage);
+        startMetrics();
+        this.puzzlePool = new PuzzlePool(4);
+        File saveDir = new File(getParameters().getNamed().getOrDefault("saveDir",
+                System.getProperty("sudoku.saveDir", System.getProperty("user.home") + File.separator + ".sudoku")));
+        String renderer = getParameters().getNamed().getOrDefault("renderer", System.getProperty("sudoku.renderer", "labels"));
 
-        Scene scene = new Scene(borderpane,662,572);
+        Scene scene = new Scene(new StackPane(new Label("Loading...")), 662, 572);
         stage.setScene(scene);
-        stage.sizeToScene();
         stage.setResizable(false);
         stage.show();
+        WINDOW_SHOWN.record(uptimeNanos());
+
+        Thread loader = new Thread(() -> {
+            try {
+                prepareGame(saveDir, renderer);
+                Platform.runLater(() -> showGame(stage, scene, renderer));
+            } catch (RuntimeException e) {
+                Platform.runLater(() -> {
+                    System.err.println("Could not start the game: " + e);
+                    Platform.exit();
+                });
+            }
+        }, "startup");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Återskapar eller genererar det första spelet och bygger vyerna. Körs i en bakgrundstråd
+     * medan fönstret redan visas; noderna får byggas här eftersom de ännu inte sitter i en scen.
+     */
+    private void prepareGame(File saveDir, String renderer) {
+        Boxes recovered = recoverLastGame(saveDir);
+        this.model = recovered != null ? recovered : new Boxes(SudokuLevel.EASY, puzzlePool.take(SudokuLevel.EASY));
+        try {
+            this.journal = new GameJournal(saveDir);
+        } catch (IOException e) {
+            System.err.println("Autosave disabled: " + e);
+        }
+        initializeTheView(renderer);
+    }
+
+    /**
+     * Kopplar ihop modellen och vyerna och byter ut platshållaren i fönstret mot spelet.
+     */
+    private void showGame(Stage stage, Scene scene, String renderer) {
+        controller = new Controller(model,gridView,buttons,menuView,stage,puzzlePool,journal);
+        if (Boolean.parseBoolean(getParameters().getNamed().getOrDefault("frameTimes", System.getProperty("sudoku.frameTimes")))) {
+            frameTimer = new FrameTimer(renderer);
+            frameTimer.attach(scene);
+            gridView.setFrameTimer(frameTimer);
+        }
+        scene.setRoot(borderpane);
+        boolean exitAfterStartup = Boolean.parseBoolean(getParameters().getNamed().getOrDefault("exitAfterStartup",
+                System.getProperty("sudoku.exitAfterStartup")));
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                GAME_READY.record(uptimeNanos());
+                if (exitAfterStartup || frameTimer != null) {
+                    System.out.printf("Startup: window shown after %d ms, game ready after %d ms%n",
+                            WINDOW_SHOWN.getMaxNanos() / 1_000_000, GAME_READY.getMaxNanos() / 1_000_000);
+                }
+                if (exitAfterStartup) Platform.exit();
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (controller != null) controller.shutdown();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Autosave failed: " + e);
+            }
+        }
+        if (puzzlePool != null) puzzlePool.shutdown();
+        if (frameTimer != null) System.out.println(frameTimer);
+        Metrics.stopDump();
+    }
+
+    /**
+     * Börjar skriva tiderna till en fil och skicka dem till Flight Recorder om det har begärts.
+     */
+    private void startMetrics() {
+        String metricsFile = getParameters().getNamed().getOrDefault("metricsFile", System.getProperty("sudoku.metricsFile"));
+        if (metricsFile != null) Metrics.startDump(new File(metricsFile), METRICS_DUMP_MILLIS);
+        if (Boolean.parseBoolean(getParameters().getNamed().getOrDefault("metricsJfr", System.getProperty("sudoku.metricsJfr")))) {
+            Metrics.enableFlightRecorder();
+        }
+    }
+
+    private static long uptimeNanos() {
+        return (System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()) * 1_000_000;
+    }
+
+    /**
+     * Återskapar det senast sparade spelet, om det finns och inte var löst.
+     */
+    private Boxes recoverLastGame(File saveDir) {
+        try {
+            Boxes recovered = GameJournal.recover(saveDir);
+            if (recovered != null && !recovered.isSolved()) return recovered;
+        } catch (IOException e) {
+            System.err.println("Could not recover the last game: " + e);
+        }
+        return null;
     }
 
-    private void initializeTheView() {
-        this.gridView = new GridView(model);
+    private void initializeTheView(String renderer) {
+        this.gridView = "canvas".equalsIgnoreCase(renderer) ? new CanvasGridView(model) : new GridView(model);
         this.buttons = new Buttons();
         this.menuView = new MenuView();
         this.borderpane = new BorderPane();
 
         borderpane.setLeft(buttons.getLeftVBox());
         borderpane.setRight(buttons.getRightVBox());
-        borderpane.setCenter(gridView.getNumberPane());
+        borderpane.setCenter(gridView.getNode());
         borderpane.setTop(menuView.getMenuBar());
 
     }
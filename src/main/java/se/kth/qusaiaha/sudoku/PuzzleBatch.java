@@ -0,0 +1,191 @@
+package se.kth.qusaiaha.sudoku;
+
+import se.kth.qusaiaha.sudoku.model.SudokuGenerator;
+import se.kth.qusaiaha.sudoku.model.SudokuLevel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+
+/**
+ * Genererar pussel i bulk utan grafiskt gränssnitt.
+ * Varje arbetare i en ForkJoinPool har en egen generator, slumpgenerator och egna buffertar
+ * och lämnar fulla buffertar till huvudtråden, som skriver dem till en fil per svårighetsnivå.
+ * Varje rad innehåller 81 startvärden följda av 81 lösningsvärden, samma format som
+ * {@code SudokuUtilities.convertStringToIntMatrix} läser.
+ * <p>
+ * Exempel: {@code java -cp target/classes se.kth.qusaiaha.sudoku.PuzzleBatch --count 100000 --out packs}
+ */
+public class PuzzleBatch {
+    private static final int CELLS = GRID_SIZE * GRID_SIZE;
+    private static final int RECORD_LENGTH = 2 * CELLS + 1;
+    private static final int RECORDS_PER_CHUNK = 512;
+    private static final ByteBuffer END_OF_WORKER = ByteBuffer.allocate(0);
+
+    private final int threads;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    /**
+     * Konstruerar en batchkörning.
+     *
+     * @param threads Antalet arbetartrådar.
+     * @param seed Fröet som varje arbetares slumpgenerator härleds från.
+     */
+    public PuzzleBatch(int threads, long seed) {
+        if (threads <= 0) throw new IllegalArgumentException("threads " + threads);
+        this.threads = threads;
+        this.seed = seed;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int count = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        Path out = Paths.get("puzzles");
+        List<SudokuLevel> levels = new ArrayList<>(List.of(SudokuLevel.values()));
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--count": count = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--out": out = Paths.get(args[++i]); break;
+                case "--levels":
+                    levels.clear();
+                    for (String level : args[++i].split(",")) levels.add(SudokuLevel.valueOf(level.trim().toUpperCase()));
+                    break;
+                default:
+                    System.err.println("usage: PuzzleBatch [--count N] [--threads T] [--seed S] [--out DIR] [--levels EASY,MEDIUM,HARD]");
+                    System.exit(2);
+            }
+        }
+
+        Files.createDirectories(out);
+        PuzzleBatch batch = new PuzzleBatch(threads, seed);
+        try {
+            for (SudokuLevel level : levels) {
+                Path file = out.resolve(level.name().toLowerCase() + ".txt");
+                long start = System.nanoTime();
+                batch.generate(level, count, file);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %d puzzles in %.2f s (%.0f puzzles/s) -> %s%n",
+                        level, count, seconds, count / seconds, file);
+            }
+        } finally {
+            batch.shutdown();
+        }
+    }
+
+    /**
+     * Genererar ett antal pussel för en svårighetsnivå och skriver dem till en fil.
+     * Ordningen mellan arbetarnas pussel i filen är inte bestämd.
+     *
+     * @param level Svårighetsnivån.
+     * @param count Antalet pussel.
+     * @param file Filen som skrivs över med pusslen.
+     * @throws IOException Om filen inte kan skrivas.
+     * @throws InterruptedException Om tråden avbryts under körningen.
+     */
+    public void generate(SudokuLevel level, int count, Path file) throws IOException, InterruptedException {
+        BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2 * threads);
+        BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(3 * threads);
+        for (int i = 0; i < 2 * threads; i++) {
+            free.add(ByteBuffer.allocate(RECORDS_PER_CHUNK * RECORD_LENGTH));
+        }
+
+        SplittableRandom seeds = new SplittableRandom(seed ^ level.ordinal());
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int worker = 0; worker < threads; worker++) {
+            int share = count / threads + (worker < count % threads ? 1 : 0);
+            long workerSeed = seeds.split().nextLong();
+            workers.add(pool.submit(() -> work(level, share, workerSeed, aborted, free, full)));
+        }
+
+        int running = threads;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (running > 0) {
+                ByteBuffer chunk = full.take();
+                if (chunk == END_OF_WORKER) {
+                    running--;
+                    continue;
+                }
+                chunk.flip();
+                while (chunk.hasRemaining()) channel.write(chunk);
+                chunk.clear();
+                free.put(chunk);
+            }
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            // stop the workers and hand their buffers back, or they wait in free.take() forever
+            aborted.set(true);
+            while (running > 0) {
+                ByteBuffer chunk = full.take();
+                if (chunk == END_OF_WORKER) {
+                    running--;
+                } else {
+                    chunk.clear();
+                    free.put(chunk);
+                }
+            }
+            throw e;
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("puzzle worker failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Stänger arbetarpoolen.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static Void work(SudokuLevel level, int count, long seed, AtomicBoolean aborted,
+                             BlockingQueue<ByteBuffer> free, BlockingQueue<ByteBuffer> full) throws InterruptedException {
+        try {
+            SudokuGenerator generator = new SudokuGenerator(new Random(seed));
+            int[] givens = new int[CELLS];
+            int[] solution = new int[CELLS];
+            ByteBuffer chunk = free.take();
+            for (int i = 0; i < count && !aborted.get(); i++) {
+                if (chunk.remaining() < RECORD_LENGTH) {
+                    full.put(chunk);
+                    chunk = free.take();
+                }
+                generator.generate(level, givens, solution);
+                for (int cell = 0; cell < CELLS; cell++) chunk.put((byte) ('0' + givens[cell]));
+                for (int cell = 0; cell < CELLS; cell++) chunk.put((byte) ('0' + solution[cell]));
+                chunk.put((byte) '\n');
+            }
+            full.put(chunk);
+        } finally {
+            full.put(END_OF_WORKER);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+package se.kth.qusaiaha.sudoku;
+
+import se.kth.qusaiaha.sudoku.model.PuzzleCatalog;
+import se.kth.qusaiaha.sudoku.model.PuzzleImporter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Importerar textfiler med pussel till en pusselkatalog utan grafiskt gränssnitt.
+ * <p>
+ * Exempel: {@code java -cp target/classes se.kth.qusaiaha.sudoku.PuzzleImport puzzles.csv puzzles.cat}
+ */
+public class PuzzleImport {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: PuzzleImport SOURCE... CATALOG");
+            System.exit(2);
+        }
+        Path catalogFile = Paths.get(args[args.length - 1]);
+        PuzzleImporter importer = new PuzzleImporter(Runtime.getRuntime().availableProcessors());
+        try (PuzzleCatalog.Writer catalog = PuzzleCatalog.append(catalogFile)) {
+            for (int i = 0; i < args.length - 1; i++) {
+                Path source = Paths.get(args[i]);
+                long start = System.nanoTime();
+                PuzzleImporter.Report report = importer.importFile(source, catalog);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %s in %.2f s (%.0f puzzles/s)%n",
+                        source, report, seconds, report.getLines() / seconds);
+                for (String error : report.getErrors()) {
+                    System.err.println(source + ": " + error);
+                }
+            }
+            System.out.println(catalogFile + ": " + catalog.size() + " puzzles");
+        } finally {
+            importer.shutdown();
+        }
+    }
+}
@@ -1,64 +1,170 @@
 package se.kth.qusaiaha.sudoku.controller;
 
-import javafx.scene.control.Alert;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 import se.kth.qusaiaha.sudoku.model.Boxes;
+import se.kth.qusaiaha.sudoku.model.GameJournal;
+import se.kth.qusaiaha.sudoku.model.Hint;
+import se.kth.qusaiaha.sudoku.model.LatencyHistogram;
+import se.kth.qusaiaha.sudoku.model.Metrics;
+import se.kth.qusaiaha.sudoku.model.PuzzlePool;
 import se.kth.qusaiaha.sudoku.model.SudokuIO;
 import se.kth.qusaiaha.sudoku.model.SudokuLevel;
-import se.kth.qusaiaha.sudoku.view.Buttons;
-import se.kth.qusaiaha.sudoku.view.GridView;
-import se.kth.qusaiaha.sudoku.view.MenuView;
+import se.kth.qusaiaha.sudoku.model.SudokuUtilities;
+import se.kth.qusaiaha.sudoku.view.BoardView;
+import se.kth.qusaiaha.sudoku.view.ControlsView;
+import se.kth.qusaiaha.sudoku.view.GameMenuView;
 
 import java.io.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Representerar kontrollern för Sudoku-applikationen, hanterar interaktioner mellan modellen och vyer.
+ * <p>
+ * Att spara och ladda spel görs i en bakgrundstråd så att gränssnittet inte fryser medan filen
+ * skrivs eller läses. Resultatet och eventuella fel lämnas tillbaka till JavaFX-tråden med
+ * {@link Platform#runLater(Runnable)}. Bara en sparning eller laddning körs åt gången.
+ * <p>
+ * Tiden för varje åtgärd, inklusive omritningen av de rutor som ändras, mäts i
+ * {@link Metrics} under namn som börjar med "controller.". För sparning och laddning mäts
+ * bara arbetet på JavaFX-tråden, inte filvalet eller det som görs i bakgrunden. Varje
+ * åtgärd blir också en {@link ControllerActionEvent} när JDK Flight Recorder spelar in.
  */
 public class Controller {
+    private static final LatencyHistogram SELECT_TIME = Metrics.histogram("controller.select");
+    private static final LatencyHistogram GUESS_TIME = Metrics.histogram("controller.guess");
+    private static final LatencyHistogram CHECK_TIME = Metrics.histogram("controller.check");
+    private static final LatencyHistogram CLEAR_TIME = Metrics.histogram("controller.clear");
+    private static final LatencyHistogram HINT_TIME = Metrics.histogram("controller.hint");
+    private static final LatencyHistogram NEW_GAME_TIME = Metrics.histogram("controller.newGame");
+    private static final LatencyHistogram SAVE_TIME = Metrics.histogram("controller.save");
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("controller.load");
+    private static final LatencyHistogram CLEAR_ALL_TIME = Metrics.histogram("controller.clearAll");
+    private static final LatencyHistogram UNDO_TIME = Metrics.histogram("controller.undo");
+    private static final LatencyHistogram REDO_TIME = Metrics.histogram("controller.redo");
+    private static final LatencyHistogram CANDIDATES_TIME = Metrics.histogram("controller.candidates");
+    private static final LatencyHistogram RESULT_TIME = Metrics.histogram("controller.result");
+
     private Boxes model;
-    private GridView gridView;
-    private Buttons buttons;
-    private MenuView menuView;
+    private BoardView gridView;
+    private ControlsView buttons;
+    private GameMenuView menuView;
     private Stage stage;
+    private PuzzlePool puzzlePool;
+    private GameJournal journal;
+    private final ExecutorService fileIo;
+    private final Executor fxThread;
+    private Future<?> fileTask;
+    private int fileTaskGeneration;   // bumped when a file task starts or is cancelled, only on the JavaFX thread
 
     /**
      * Konstruerar en ny Controller-objekt.
      *
      * @param model Boxes-modellen som håller spelets tillstånd.
-     * @param gridView GridView-objektet som ansvarar för att visa spelrutnätet.
+     * @param gridView Vyn som ansvarar för att visa spelrutnätet.
      * @param buttons Buttons-objektet som representerar spelkontrollknapparna.
      * @param menuView MenuView-objektet som hanterar spelets meny.
      * @param stage JavaFX-scenen där spelgränssnittet visas.
+     * @param puzzlePool Poolen med färdiggenererade pussel som nya spel hämtas från.
+     * @param journal Journalen som sparar spelet automatiskt, eller null om det inte ska sparas.
      */
-    public Controller(Boxes model, GridView gridView, Buttons buttons, MenuView menuView, Stage stage) {
+    public Controller(Boxes model, BoardView gridView, ControlsView buttons, GameMenuView menuView, Stage stage, PuzzlePool puzzlePool,
+                      GameJournal journal) {
+        this(model, gridView, buttons, menuView, stage, puzzlePool, journal, Platform::runLater);
+    }
+
+    /**
+     * Konstruerar en ny Controller-objekt som lämnar resultaten från bakgrundstrådar till en
+     * given exekverare i stället för till JavaFX-tråden, till exempel när kontrollern körs
+     * utan grafiskt gränssnitt.
+     *
+     * @param model Boxes-modellen som håller spelets tillstånd.
+     * @param gridView Vyn som ansvarar för att visa spelrutnätet.
+     * @param buttons Knapparna bredvid brädet.
+     * @param menuView Menyn och dialogerna den öppnar.
+     * @param stage JavaFX-scenen där spelgränssnittet visas, eller null utan gränssnitt.
+     * @param puzzlePool Poolen med färdiggenererade pussel som nya spel hämtas från.
+     * @param journal Journalen som sparar spelet automatiskt, eller null om det inte ska sparas.
+     * @param fxThread Exekveraren som kör allt som rör modellen och vyerna efter en sparning eller laddning.
+     */
+    public Controller(Boxes model, BoardView gridView, ControlsView buttons, GameMenuView menuView, Stage stage, PuzzlePool puzzlePool,
+                      GameJournal journal, Executor fxThread) {
         this.model = model;
         this.gridView = gridView;
         this.buttons = buttons;
         this.menuView = menuView;
         this.stage = stage;
+        this.puzzlePool = puzzlePool;
+        this.journal = journal;
+        this.fxThread = fxThread;
+        this.fileIo = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-file-io");
+            thread.setDaemon(true);
+            return thread;
+        });
 
+        if (journal != null) journal.attach(model);
         gridView.setController(this);
         buttons.setController(this);
         menuView.setController(this);
     }
 
 
+    /**
+     * Börjar en händelse för en åtgärd om Flight Recorder spelar in den.
+     *
+     * @return Händelsen, eller null om den inte spelas in.
+     */
+    private ControllerActionEvent startAction() {
+        if (!ControllerActionEvent.recording()) return null;
+        ControllerActionEvent action = new ControllerActionEvent();
+        action.changesBefore = model.getChangeCount();
+        action.begin();
+        return action;
+    }
+
+    /**
+     * Lägger tiden för en åtgärd i histogrammet och skickar händelsen för den, om den finns.
+     */
+    private void finishAction(ControllerActionEvent action, long start, LatencyHistogram histogram) {
+        histogram.recordSince(start);
+        if (action == null) return;
+        action.end();
+        if (action.shouldCommit()) {
+            action.action = histogram.getName();
+            action.level = model.getLevel() == null ? null : model.getLevel().name();
+            action.cellsChanged = model.getChangeCount() - action.changesBefore;
+            action.commit();
+        }
+    }
+
     /**
      * Hanterar det valda rutnummeret.
      */
     public void handleTheChosenSquare() {
-        gridView.updateView();
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        gridView.updateSelection();
+        finishAction(action, start, SELECT_TIME);
     }
 
     /**
-     * Hanterar händelsen när en gissning görs, uppdaterar modellen och grid vyn.
+     * Hanterar händelsen när en gissning görs och uppdaterar modellen.
+     * Grid vyn lyssnar på modellen och ritar om de rutor som ändras.
      */
     public void handleGuess() {
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
         if(buttons.isValid()) {
             model.enter(gridView.getClickedRow(), gridView.getClickedCol(), buttons.getSelectedButton());
-            gridView.updateView();
-            System.out.println(model.boxesLeftToEnter());
         }
+        finishAction(action, start, GUESS_TIME);
     }
 
     /**
@@ -66,92 +172,165 @@ public class Controller {
      * Visar en varning med resultatet.
      */
     public void handleCheck() {
-        Alert alert = menuView.alertWindow("Resultat hitills", "information:");
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
         if (model.Check()){
-            alert.setContentText("Korrekt!");
+            menuView.showInformation("Resultat hitills", "information:", "Korrekt!");
         } else {
-            alert.setContentText("Du har gjort några misstag...");
+            menuView.showInformation("Resultat hitills", "information:", "Du har gjort några misstag...");
         }
-        alert.show();
-        gridView.updateView();
+        finishAction(action, start, CHECK_TIME);
     }
 
     /**
-     * Hanterar händelsen när användaren rensar en gissning i en ruta, uppdaterar modellen och grid vyn.
+     * Hanterar händelsen när användaren rensar en gissning i en ruta och uppdaterar modellen.
      */
     public void handleClear() {
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
         if (!buttons.isValid()) {
             model.clear(gridView.getClickedRow(), gridView.getClickedCol());
-            gridView.updateView();
-            System.out.println(model.boxesLeftToEnter());
         }
+        finishAction(action, start, CLEAR_TIME);
     }
 
     /**
-     * Hanterar händelsen när användaren begär en ledtråd, uppdaterar modellen och grid vyn.
+     * Hanterar händelsen när användaren begär en ledtråd och uppdaterar modellen.
+     * Rutorna som ledtråden bygger på markeras och förklaringen visas under knappen.
      */
     public void handleHint() {
-        model.hint();
-        gridView.updateView();
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        Hint hint = model.hint();
+        gridView.showHint(hint);
+        buttons.setHintText(hint == null ? "" : hint.getDescription());
+        finishAction(action, start, HINT_TIME);
     }
 
     /**
-     * Hanterar händelsen när användaren startar ett nytt spel, återställer modellen och uppdaterar grid vyn.
+     * Hanterar händelsen när användaren startar ett nytt spel och återställer modellen.
      */
     public void handleNewGame() {
-        model.NewGame();
-        gridView.updateView();
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        model.NewGame(nextPuzzle(model.getLevel()));
+        finishAction(action, start, NEW_GAME_TIME);
     }
 
     /**
-     * Hanterar händelsen när användaren startar ett nytt spel med en angiven nivå, återställer modellen och uppdaterar grid vyn.
+     * Hanterar händelsen när användaren startar ett nytt spel med en angiven nivå och återställer modellen.
      *
      * @param level Svårighetsnivån för det nya spelet.
      */
     public void handleNewGameNewLevel(SudokuLevel level) {
-        model.NewGameNewLevel(level);
-        gridView.updateView();
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        model.NewGameNewLevel(level, nextPuzzle(level));
+        finishAction(action, start, NEW_GAME_TIME);
+    }
+
+    /**
+     * Hämtar nästa pussel i samma storlek som det pågående spelet. Poolen innehåller
+     * bara 9x9-pussel, andra storlekar genereras direkt.
+     */
+    private int[][][] nextPuzzle(SudokuLevel level) {
+        if (model.getSize() == SudokuUtilities.GRID_SIZE) return puzzlePool.take(level);
+        return SudokuUtilities.generateSudokuMatrix(level, model.getSize());
     }
 
     /**
      * Hanterar åtgärden att spara det aktuella tillståndet för Sudoku-spelet till en fil.
      * Öppnar en FileChooser-dialog där användaren kan ange filen där spelets tillstånd kommer att sparas.
-     * Om en giltig fil väljs sparas det aktuella Sudoku-spelets tillstånd till den filen.
+     * Om en giltig fil väljs sparas en kopia av spelet i bakgrunden, så att spelaren kan
+     * fortsätta medan filen skrivs.
      */
     public void handleSaveGame() {
         File file = menuView.makeFileChooser("Save Game", stage);
-        if(file!=null) {
-            try {
-                SudokuIO.SaveGame(file, model);
-            } catch (IOException e) {
-                Alert alert = menuView.alertWindow("Exception!", "Exception!");
-                alert.setContentText("Exception line 126 while saving game!");
-                alert.show();
-                throw new RuntimeException(e);
-            }
-        }
+        if (file == null) return;
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        Boxes copy = model.copy();
+        runFileTask("Sparar " + file.getName() + "...", "Spelet kunde inte sparas", () -> {
+            SudokuIO.SaveGame(file, copy);
+            return copy;
+        }, saved -> buttons.setStatusText("Sparat till " + file.getName() + "."));
+        finishAction(action, start, SAVE_TIME);
     }
 
     /**
      * Hanterar åtgärden att ladda ett Sudoku-spel från en fil.
      * Öppnar en FileChooser-dialog där användaren kan välja en fil att ladda spelets tillstånd från.
-     * Om en giltig fil väljs laddas Sudoku-spelets tillstånd och vyn uppdateras.
+     * Om en giltig fil väljs laddas Sudoku-spelets tillstånd i bakgrunden och vyn uppdateras
+     * när det är klart.
      */
     public void handleLoadGame() {
         File file = menuView.makeFileChooser("Load Game", stage);
-        Boxes modelFromFiles = null;
-        try {
-            modelFromFiles = SudokuIO.LoadGame(file);
-        } catch (IOException | ClassNotFoundException e) {
-            Alert alert = menuView.alertWindow("Exception!", "Exception!");
-            alert.setContentText("Exception line 144 while Loading game!");
-            alert.show();
-            throw new RuntimeException(e);
-        }
-        if (modelFromFiles != null) {
+        if (file == null) return;
+        runFileTask("Laddar " + file.getName() + "...", "Spelet kunde inte laddas", () -> SudokuIO.LoadGame(file), modelFromFiles -> {
+            long start = System.nanoTime();
+            ControllerActionEvent action = startAction();
             model = modelFromFiles;
+            if (journal != null) journal.attach(model);
             gridView.setModel(model);
             gridView.updateView();
+            buttons.setStatusText("Laddade " + file.getName() + ".");
+            // the loaded game replaced every cell
+            if (action != null) action.changesBefore = model.getChangeCount() - model.getSize() * model.getSize();
+            finishAction(action, start, LOAD_TIME);
+        });
+    }
+
+    /**
+     * Hanterar händelsen när användaren avbryter en pågående sparning eller laddning.
+     * En avbruten sparning lämnar den gamla filen orörd, och ett avbrutet laddat spel visas inte.
+     */
+    public void handleCancelFileTask() {
+        if (fileTask == null) return;
+        fileTask.cancel(true);
+        fileTask = null;
+        fileTaskGeneration++;
+        menuView.setFileTaskRunning(false);
+        buttons.setStatusText("Avbrutet.");
+    }
+
+    /**
+     * Kör en sparning eller laddning i bakgrunden och avbryter den som eventuellt pågår.
+     *
+     * @param progress Texten som visas medan arbetet pågår.
+     * @param failureHeader Rubriken i felmeddelandet om arbetet misslyckas.
+     * @param work Arbetet som görs i bakgrundstråden.
+     * @param onSuccess Anropas på JavaFX-tråden med resultatet om arbetet lyckades och inte avbröts.
+     */
+    private <T> void runFileTask(String progress, String failureHeader, Callable<T> work, Consumer<T> onSuccess) {
+        handleCancelFileTask();
+        int generation = ++fileTaskGeneration;
+        buttons.setStatusText(progress);
+        menuView.setFileTaskRunning(true);
+        fileTask = fileIo.submit(() -> {
+            T result = null;
+            Exception failure = null;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                failure = e;
+            }
+            T finalResult = result;
+            Exception finalFailure = failure;
+            fxThread.execute(() -> finishFileTask(generation, failureHeader, finalResult, finalFailure, onSuccess));
+        });
+    }
+
+    private <T> void finishFileTask(int generation, String failureHeader, T result, Exception failure, Consumer<T> onSuccess) {
+        if (generation != fileTaskGeneration) return;   // cancelled or replaced by a newer task
+        fileTask = null;
+        menuView.setFileTaskRunning(false);
+        if (failure != null) {
+            buttons.setStatusText("");
+            menuView.showError(failureHeader, "Fel", failure.getMessage() != null ? failure.getMessage() : failure.toString());
+        } else if (result != null) {
+            onSuccess.accept(result);
+        } else {
+            buttons.setStatusText("");
         }
     }
 
@@ -160,33 +339,74 @@ public class Controller {
      * Visar en varning med spelets information.
      */
     public void handleInfo() {
-        Alert alert = menuView.alertWindow("Spelregler!", "Information");
-        alert.setContentText(model.gameInfo());
-        alert.show();
+        menuView.showInformation("Spelregler!", "Information", model.gameInfo());
     }
 
     /**
      * Hanterar händelsen när användaren rensar alla gissningar på brädet.
-     * Uppdaterar modellen och grid vyn.
+     * Uppdaterar modellen.
      */
     public void handleClearAll() {
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
         model.clearAll();
-        gridView.updateView();
+        finishAction(action, start, CLEAR_ALL_TIME);
+    }
+
+    /**
+     * Hanterar händelsen när användaren ångrar det senaste draget.
+     * Grid vyn lyssnar på modellen och ritar om de rutor som ändras.
+     */
+    public void handleUndo() {
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        model.undo();
+        finishAction(action, start, UNDO_TIME);
+    }
+
+    /**
+     * Hanterar händelsen när användaren gör om ett ångrat drag.
+     */
+    public void handleRedo() {
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        model.redo();
+        finishAction(action, start, REDO_TIME);
+    }
+
+    /**
+     * Visar eller döljer kandidaterna (blyertsanteckningar) i brädets tomma rutor.
+     *
+     * @param show Sant för att visa kandidaterna.
+     */
+    public void handleShowCandidates(boolean show) {
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
+        gridView.setShowCandidates(show);
+        finishAction(action, start, CANDIDATES_TIME);
+    }
+
+    /**
+     * Visar diagnostikpanelen med tiderna och räknarna i {@link Metrics}.
+     */
+    public void handleShowDiagnostics() {
+        menuView.showDiagnostics();
     }
 
     /**
      * Kontrollerar spelets resultat och visar en gratulerande eller informativ varning om spelet är vunnet eller förlorat.
      */
     public void result() {
+        long start = System.nanoTime();
+        ControllerActionEvent action = startAction();
         if(model.boxesLeftToEnter() == 0) {
-            Alert alert = menuView.alertWindow("Resultat", "Information");
             if(model.result()) {
-                alert.setContentText("Grattis, du vann!");
+                menuView.showInformation("Resultat", "Information", "Grattis, du vann!");
             }else {
-                alert.setContentText("Några fel, men bra försök!");
+                menuView.showInformation("Resultat", "Information", "Några fel, men bra försök!");
             }
-            alert.show();
         }
+        finishAction(action, start, RESULT_TIME);
     }
 
     /**
@@ -196,4 +416,17 @@ public class Controller {
     public void handleExit() {
         stage.close();
     }
+
+    /**
+     * Stoppar bakgrundstråden för filer. En sparning som pågår får några sekunder på sig
+     * att bli klar.
+     */
+    public void shutdown() {
+        fileIo.shutdown();
+        try {
+            fileIo.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
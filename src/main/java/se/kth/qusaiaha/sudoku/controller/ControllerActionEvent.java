@@ -0,0 +1,46 @@
+package se.kth.qusaiaha.sudoku.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * En händelse för JDK Flight Recorder för en åtgärd i {@link Controller}, från att
+ * åtgärden börjar tills modellen och vyerna har uppdaterats.
+ */
+@Name("se.kth.qusaiaha.sudoku.ControllerAction")
+@Label("Controller Action")
+@Category({"Sudoku", "Controller"})
+@Description("A user action handled on the JavaFX thread")
+@StackTrace(false)
+/*package private*/
+final class ControllerActionEvent extends Event {
+    @Label("Action")
+    String action;
+
+    @Label("Level")
+    String level;
+
+    @Label("Cells Changed")
+    @Description("Cells given a new digit by the action")
+    long cellsChanged;
+
+    // not recorded, used to count the changed cells
+    transient long changesBefore;
+
+    // only asked whether the event is enabled, which does not depend on the instance
+    private static final ControllerActionEvent PROBE = new ControllerActionEvent();
+
+    /**
+     * Kontrollerar om händelsen spelas in. Kontrollern skapar bara händelser när den gör det,
+     * så att en åtgärd inte allokerar något när Flight Recorder inte används.
+     *
+     * @return Sant om en pågående inspelning har händelsen påslagen.
+     */
+    static boolean recording() {
+        return PROBE.isEnabled();
+    }
+}
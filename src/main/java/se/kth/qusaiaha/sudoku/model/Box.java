@@ -6,6 +6,7 @@ import java.io.Serializable;
  * Representerar en ruta i Sudoku-brädet.
  */
 public class Box implements Serializable {
+    private static final long serialVersionUID = -662186278695220912L;
     private int toEnter;
     private int entered;
     private StateOfBox stateOfbox;
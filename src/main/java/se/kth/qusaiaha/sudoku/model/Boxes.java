@@ -1,17 +1,77 @@
 package se.kth.qusaiaha.sudoku.model;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.Random;
-
-import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Representerar rutorna i Sudoku-brädet och dess logik.
+ * <p>
+ * Brädet lagras i tre platta byte-arrayer i radordning, en byte per ruta för lösningen,
+ * det inskrivna värdet och tillståndet. Det gör ett spel litet och billigt att kopiera.
+ * Brädets storlek bestäms av pusslet och kan vara 4x4, 9x9, 16x16 eller 25x25.
+ * Varje ändring av en ruta meddelas registrerade {@link BoxesListener}s.
+ * <p>
+ * Spelet håller ett index över hur många gånger varje siffra finns i varje rad, kolumn
+ * och block, som uppdateras i konstant tid när en ruta ändras. Därför kan en krock med
+ * spelreglerna och ett vunnet spel avgöras utan att gå igenom hela brädet.
+ * <p>
+ * Drag som görs med {@link #enter}, {@link #clear}, {@link #clearAll} och {@link #hint} sparas
+ * i en historik så att de kan ångras och göras om, se {@link #undo()}, {@link #redo()} och
+ * {@link #jumpTo(int)}. Historiken tar några kilobyte hur långt spelet än blir; bara de
+ * senaste {@value MoveHistory#CAPACITY} dragen kan ångras.
+ * <p>
+ * Antalet drag och tiden för att hitta en ledtråd och starta ett nytt spel, utan
+ * omritningen i lyssnarna, räknas i {@link Metrics}.
  */
-public class Boxes implements Serializable {
-    private Box[][] boxes;
+public class Boxes implements ReadOnlyBoxes, Serializable {
+    private static final long serialVersionUID = 2936430416100530257L;
+    private static final StateOfBox[] STATES = StateOfBox.values();
+    private static final byte KNOWN = (byte) StateOfBox.KNOWN.ordinal();
+    private static final byte TO_ENTER = (byte) StateOfBox.TO_ENTER.ordinal();
+    private static final byte RIGHT = (byte) StateOfBox.RIGHT.ordinal();
+    private static final LatencyHistogram HINT_TIME = Metrics.histogram("model.hint");
+    private static final LatencyHistogram NEW_GAME_TIME = Metrics.histogram("model.newGame");
+    private static final LongAdder MOVES = Metrics.counter("model.moves");
+
+    /**
+     * Serialiserade spel använder fortfarande fälten från när brädet bestod av Box-objekt,
+     * så att äldre sparade spel kan läsas och nya kan läsas av äldre versioner.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("boxes", Box[][].class),
+            new ObjectStreamField("boxesLeftToEnter", int.class),
+            new ObjectStreamField("level", SudokuLevel.class)
+    };
+
+    private int size;
+    private int cells;
+    private byte[] toEnter;
+    private byte[] entered;
+    private byte[] states;
     private int boxesLeftToEnter;
     private SudokuLevel level;
+    private transient List<BoxesListener> listeners = new ArrayList<>();
+
+    private transient SudokuGeometry geometry;
+    private transient byte[] digitCounts;   // [unit * (size + 1) + digit], units as in SudokuGeometry
+    private transient long[] unitDigits;    // bit digit-1 is set when the unit holds the digit
+    private transient int conflicts;        // (unit, digit) pairs that hold the digit more than once
+    private transient int wrongEntries;     // non-empty cells that differ from the solution
+
+    private transient SudokuGrader hintGrader;
+    private transient int[] hintPosition;
+    private transient int[] hintSolution;
+
+    private transient MoveHistory history;
+    private transient long changes;         // cells given a new entered digit, all cells for a new board
 
     /**
      * Konstruerar ett nytt Boxes-objekt med en angiven svårighetsnivå.
@@ -19,10 +79,90 @@ public class Boxes implements Serializable {
      * @param level Svårighetsnivån för det nya spelet.
      */
     public Boxes(SudokuLevel level){
-        this.boxes = new Box[GRID_SIZE][GRID_SIZE];
-        this.boxesLeftToEnter = 81;
+        this(level, SudokuUtilities.generateSudokuMatrix(level));
+    }
+
+    /**
+     * Konstruerar ett nytt Boxes-objekt med en angiven svårighetsnivå och brädstorlek.
+     *
+     * @param level Svårighetsnivån för det nya spelet.
+     * @param size Antalet rutor per rad, till exempel 4, 9, 16 eller 25.
+     * @throws IllegalArgumentException Om storleken inte stöds.
+     */
+    public Boxes(SudokuLevel level, int size){
+        this(level, SudokuUtilities.generateSudokuMatrix(level, size));
+    }
+
+    /**
+     * Konstruerar ett nytt Boxes-objekt från en redan genererad Sudoku-matris.
+     *
+     * @param level Svårighetsnivån för det nya spelet.
+     * @param sudokuMatrix Matrisen där [row][col][0] är startvärdena och [row][col][1] lösningen.
+     *                     Brädets storlek är matrisens storlek.
+     * @throws IllegalArgumentException Om matrisens storlek inte stöds.
+     */
+    public Boxes(SudokuLevel level, int[][][] sudokuMatrix){
         this.level = level;
-        fillBoxes(this.level);
+        fillBoxes(sudokuMatrix);
+    }
+
+    /**
+     * Återskapar ett spel från sparade rutor i radordning, se {@link SudokuIO}.
+     * Arrayerna används direkt och kopieras inte.
+     *
+     * @param level Svårighetsnivån för spelet.
+     * @param size Antalet rutor per rad.
+     * @param toEnter Värdena som ska fyllas i rutorna.
+     * @param entered De inskrivna värdena, noll för en tom ruta.
+     * @param states Tillstånden för rutorna som {@link StateOfBox#ordinal()}.
+     */
+    /*package private*/
+    Boxes(SudokuLevel level, int size, byte[] toEnter, byte[] entered, byte[] states) {
+        this.size = size;
+        this.cells = size * size;
+        this.toEnter = toEnter;
+        this.entered = entered;
+        this.states = states;
+        this.level = level;
+        this.boxesLeftToEnter = countEmpty(entered);
+        buildIndex();
+        resetHistory();
+    }
+
+    private Boxes(Boxes other) {
+        this.size = other.size;
+        this.cells = other.cells;
+        this.toEnter = other.toEnter.clone();
+        this.entered = other.entered.clone();
+        this.states = other.states.clone();
+        this.boxesLeftToEnter = other.boxesLeftToEnter;
+        this.level = other.level;
+        this.geometry = other.geometry;
+        this.digitCounts = other.digitCounts.clone();
+        this.unitDigits = other.unitDigits.clone();
+        this.conflicts = other.conflicts;
+        this.wrongEntries = other.wrongEntries;
+        resetHistory();
+    }
+
+    /**
+     * Returnerar en oberoende kopia av spelet. Kopian består av tre arrayer med en byte per ruta
+     * och får inga lyssnare och ingen historik.
+     *
+     * @return En kopia av spelet.
+     */
+    public Boxes copy() {
+        return new Boxes(this);
+    }
+
+    /**
+     * Returnerar spelets svårighetsnivå.
+     *
+     * @return Svårighetsnivån för det pågående spelet.
+     */
+    @Override
+    public SudokuLevel getLevel() {
+        return level;
     }
 
     /**
@@ -30,20 +170,128 @@ public class Boxes implements Serializable {
      *
      * @return Antalet kvarvarande rutor att fylla i.
      */
+    @Override
     public int boxesLeftToEnter(){
         return boxesLeftToEnter;
     }
 
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getSectionSize() {
+        return SudokuUtilities.sectionSize(size);
+    }
+
+    @Override
+    public int getToEnter(int row, int col) {
+        return toEnter[row * size + col];
+    }
+
+    @Override
+    public int getEntered(int row, int col) {
+        return entered[row * size + col];
+    }
+
+    @Override
+    public StateOfBox getState(int row, int col) {
+        return STATES[states[row * size + col]];
+    }
+
+    @Override
+    public boolean isConflicting(int row, int col) {
+        int digit = entered[row * size + col];
+        return digit != 0 && wouldConflict(row, col, digit);
+    }
+
+    @Override
+    public boolean wouldConflict(int row, int col, int digit) {
+        int cell = row * size + col;
+        if (entered[cell] != digit) {
+            return ((unitDigits[geometry.rowOf[cell]] | unitDigits[size + geometry.colOf[cell]]
+                    | unitDigits[2 * size + geometry.sectionOf[cell]]) & SudokuGeometry.bit(digit)) != 0;
+        }
+        return digitCount(geometry.rowOf[cell], digit) > 1
+                || digitCount(size + geometry.colOf[cell], digit) > 1
+                || digitCount(2 * size + geometry.sectionOf[cell], digit) > 1;
+    }
+
+    @Override
+    public long getCandidates(int row, int col) {
+        int cell = row * size + col;
+        if (entered[cell] != 0) return 0;
+        return geometry.allDigits & ~(unitDigits[geometry.rowOf[cell]] | unitDigits[size + geometry.colOf[cell]]
+                | unitDigits[2 * size + geometry.sectionOf[cell]]);
+    }
+
+    @Override
+    public int getConflictCount() {
+        return conflicts;
+    }
+
+    @Override
+    public boolean isSolved() {
+        return boxesLeftToEnter == 0 && conflicts == 0;
+    }
+
+    @Override
+    public void addListener(BoxesListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(BoxesListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returnerar värdet som ska fyllas i en ruta i radordning.
+     */
+    /*package private*/
+    int toEnterAt(int cell) {
+        return toEnter[cell];
+    }
+
+    /**
+     * Returnerar det inskrivna värdet i en ruta i radordning.
+     */
+    /*package private*/
+    int enteredAt(int cell) {
+        return entered[cell];
+    }
+
+    /**
+     * Returnerar tillståndet för en ruta i radordning som {@link StateOfBox#ordinal()}.
+     */
+    /*package private*/
+    int stateAt(int cell) {
+        return states[cell];
+    }
+
+    /**
+     * Returnerar siffrorna som finns i en enhet som en mask, bit d-1 för siffran d.
+     * Enheterna numreras som i {@link SudokuGeometry}.
+     */
+    /*package private*/
+    long unitDigitsAt(int unit) {
+        return unitDigits[unit];
+    }
+
     /**
      * Returnerar en kopia av rutorna i brädet.
      *
      * @return En kopia av rutorna i brädet.
+     * @deprecated Skapar ett nytt objekt per ruta vid varje anrop. Använd {@link #getEntered(int, int)},
+     * {@link #getToEnter(int, int)} och {@link #getState(int, int)}.
      */
+    @Deprecated
     public Box[][] getBoxes() {
-        Box[][] copy = new Box[GRID_SIZE][GRID_SIZE];
-        for(int row = 0; row < GRID_SIZE; row++){
-            for( int col = 0; col < GRID_SIZE; col++){
-                copy[row][col] = new Box(boxes[row][col].getToEnter(), boxes[row][col].getEntered() ,boxes[row][col].getStateOfbox());
+        Box[][] copy = new Box[size][size];
+        for(int row = 0; row < size; row++){
+            for( int col = 0; col < size; col++){
+                copy[row][col] = new Box(getToEnter(row, col), getEntered(row, col), getState(row, col));
             }
         }
         return copy;
@@ -59,31 +307,30 @@ public class Boxes implements Serializable {
      * @throws IllegalArgumentException Om det inskrivna värdet är ogiltigt.
      */
     public void enter(int rowNb, int colNb, int entered) throws IllegalArgumentException {
-        if(entered <= 0 || entered > 9) throw new IllegalArgumentException("Ogiltigt värde!");
-        if(boxes[rowNb][colNb].getStateOfbox().equals(StateOfBox.KNOWN)) return;
-        if(boxes[rowNb][colNb].getEntered() != 0) {
-            boxes[rowNb][colNb].setEntered(entered);
-        } else {
-            boxes[rowNb][colNb].setEntered(entered);
-            boxesLeftToEnter--;
-        }
+        if(entered <= 0 || entered > size) throw new IllegalArgumentException("Ogiltigt värde!");
+        int cell = rowNb * size + colNb;
+        if(states[cell] == KNOWN) return;
+        if(this.entered[cell] == entered) return;
+        play(cell, entered, false);
     }
 
     /**
-     * Kontrollerar om brädet är korrekt ifyllt.
+     * Kontrollerar om brädet är korrekt ifyllt. Är det det markeras de ifyllda rutorna som
+     * rätt, se {@link #isEnteredCorrect(int)}; annars lämnas brädet orört.
      *
      * @return Sant om brädet är korrekt ifyllt, annars falskt.
      */
     public boolean Check() {
-        for (int row=0; row<GRID_SIZE; row++) {
-            for (int col=0; col<GRID_SIZE; col++) {
-                if (!boxes[row][col].getStateOfbox().equals(StateOfBox.KNOWN) && boxes[row][col].getEntered() != 0) {
-                    if (!boxes[row][col].isEnteredCorrect()) {
-                        return false;
-                    }
+        if (wrongEntries != 0) return false;
+        for (int cell = 0; cell < cells; cell++) {
+            if (states[cell] != KNOWN && entered[cell] != 0) {
+                if (!isEnteredCorrect(cell)) {
+                    return false;
                 }
             }
         }
+        // the marked cells are KNOWN now and can no longer be undone
+        resetHistory();
         return true;
     }
 
@@ -94,41 +341,38 @@ public class Boxes implements Serializable {
      * @param colNr Kolumnnummer.
      */
     public void clear(int rowNr, int colNr) {
-        if(boxes[rowNr][colNr].getStateOfbox().equals(StateOfBox.KNOWN)) {
-            return;
-        } else if(boxes[rowNr][colNr].getToEnter() != 0) {
-            boxes[rowNr][colNr].setEntered(0);
-            boxesLeftToEnter++;
-        }
+        int cell = rowNr * size + colNr;
+        if(states[cell] == KNOWN) return;
+        if(entered[cell] != 0) play(cell, 0, false);
     }
 
     /**
-     * Rensar alla rutor.
+     * Rensar alla rutor. Det ångras som ett enda drag.
      */
     public void clearAll() {
-        for (int row=0; row<GRID_SIZE; row++) {
-            for(int col=0; col<GRID_SIZE; col++) {
-                if(!boxes[row][col].getStateOfbox().equals(StateOfBox.KNOWN)) {
-                    boxes[row][col].setEntered(0);
-                    this.boxesLeftToEnter++;
-                }
+        boolean continues = false;
+        for (int cell = 0; cell < cells; cell++) {
+            if(states[cell] != KNOWN && entered[cell] != 0) {
+                play(cell, 0, continues);
+                continues = true;
             }
         }
     }
 
     /**
-     * Kontrollerar om alla rutor är korrekt ifyllda.
+     * Kontrollerar om alla rutor är korrekt ifyllda. Är de det markeras alla rutor som rätt,
+     * se {@link #isEnteredCorrect(int)}; annars lämnas brädet orört.
      *
      * @return Sant om alla rutor är korrekt ifyllda, annars falskt.
      */
     public boolean result() {
-        for (int row=0; row<GRID_SIZE; row++) {
-            for (int col=0; col<GRID_SIZE; col++) {
-                if(!boxes[row][col].isEnteredCorrect()) {
-                    return false;
-                }
+        if (!isSolved()) return false;
+        for (int cell = 0; cell < cells; cell++) {
+            if(!isEnteredCorrect(cell)) {
+                return false;
             }
         }
+        resetHistory();
         return true;
     }
 
@@ -142,19 +386,152 @@ public class Boxes implements Serializable {
     }
 
     /**
-     * Ger en ledtråd genom att fylla i en slumpmässig ruta.
+     * Ger en ledtråd. Finns det en felaktigt ifylld ruta rättas den först. Annars letas nästa
+     * siffra fram från den aktuella ställningen med de lättaste lösningsteknikerna, se
+     * {@link SudokuGrader}, och skrivs in.
+     *
+     * @return Ledtråden, eller null om brädet redan är korrekt ifyllt.
      */
-    public void hint() {
-        if (!isTheLastBox()) {
-            Random random = new Random();
-            int rowRand;
-            int colRand;
-            do {
-                rowRand = random.nextInt(9);
-                colRand = random.nextInt(9);
-            } while (boxes[rowRand][colRand].getEntered() != 0);
-            boxes[rowRand][colRand].setEntered(boxes[rowRand][colRand].getToEnter());
-            this.boxesLeftToEnter--;
+    public Hint hint() {
+        long start = System.nanoTime();
+        boolean[] involved = new boolean[cells];
+        if (wrongEntries > 0) {
+            for (int cell = 0; cell < cells; cell++) {
+                int wrong = entered[cell];
+                if (wrong == 0 || wrong == toEnter[cell]) continue;
+                // the peers it clashes with are part of the explanation
+                int[] peers = geometry.peers[cell];
+                for (int i = 0; i < peers.length; i++) {
+                    if (entered[peers[i]] == wrong) involved[peers[i]] = true;
+                }
+                HINT_TIME.recordSince(start);
+                play(cell, toEnter[cell], false);
+                return new Hint(cell / size, cell % size, toEnter[cell], null, size, involved);
+            }
+        }
+        if (isTheLastBox()) return null;
+
+        if (hintGrader == null || hintGrader.getSize() != size) {
+            hintGrader = new SudokuGrader(size);
+            hintPosition = new int[cells];
+            hintSolution = new int[cells];
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            hintPosition[cell] = entered[cell];
+            hintSolution[cell] = toEnter[cell];
+        }
+        SudokuTechnique technique = hintGrader.findPlacement(hintPosition, hintSolution, involved);
+        HINT_TIME.recordSince(start);
+        if (technique == null) return null;
+        int cell = hintGrader.getPlacementCell();
+        play(cell, hintGrader.getPlacementDigit(), false);
+        return new Hint(cell / size, cell % size, entered[cell], technique, size, involved);
+    }
+
+    /**
+     * Ångrar det senaste draget. Ett drag som rensade alla rutor ångras i sin helhet.
+     *
+     * @return Sant om ett drag ångrades, falskt om det inte fanns något att ångra.
+     */
+    public boolean undo() {
+        if (!history.canUndo()) return false;
+        do {
+            int move = history.stepBack();
+            setEntered(MoveHistory.cell(move), MoveHistory.from(move));
+        } while (history.continuesAt(history.position()));
+        return true;
+    }
+
+    /**
+     * Gör om det senast ångrade draget.
+     *
+     * @return Sant om ett drag gjordes om, falskt om det inte fanns något att göra om.
+     */
+    public boolean redo() {
+        if (!history.canRedo()) return false;
+        do {
+            int move = history.stepForward();
+            setEntered(MoveHistory.cell(move), MoveHistory.to(move));
+        } while (history.continuesAt(history.position()));
+        return true;
+    }
+
+    /**
+     * Kontrollerar om det finns ett drag att ångra.
+     *
+     * @return Sant om {@link #undo()} har något att ångra.
+     */
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    /**
+     * Kontrollerar om det finns ett ångrat drag att göra om.
+     *
+     * @return Sant om {@link #redo()} har något att göra om.
+     */
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Returnerar hur många drag i historiken som är gjorda.
+     *
+     * @return Positionen i historiken, mellan noll och {@link #getHistorySize()}.
+     */
+    public int getHistoryPosition() {
+        return history.position();
+    }
+
+    /**
+     * Returnerar hur många drag historiken innehåller, inklusive ångrade drag.
+     *
+     * @return Antalet drag i historiken.
+     */
+    public int getHistorySize() {
+        return history.size();
+    }
+
+    /**
+     * Returnerar hur många gånger en ruta har fått ett nytt inskrivet värde i det här
+     * objektet. Ett nytt spel och ett långt hopp i historiken räknas som att alla rutor ändrades.
+     * Skillnaden före och efter en åtgärd är antalet rutor som åtgärden ändrade.
+     *
+     * @return Antalet ändrade rutor sedan objektet skapades.
+     */
+    public long getChangeCount() {
+        return changes;
+    }
+
+    /**
+     * Hoppar till en position i historiken, framåt eller bakåt. Långa hopp börjar från den
+     * närmaste ögonblicksbilden och ritar om hela brädet; korta hopp stegar drag för drag.
+     *
+     * @param position Antalet gjorda drag efter hoppet.
+     * @throws IllegalArgumentException Om positionen ligger utanför historiken.
+     */
+    public void jumpTo(int position) throws IllegalArgumentException {
+        if (position < 0 || position > history.size()) throw new IllegalArgumentException("Ogiltig position!");
+        int steps = Math.abs(position - history.position());
+        if (steps > position % MoveHistory.SNAPSHOT_INTERVAL + cells) {
+            System.arraycopy(history.seekSnapshot(position), 0, entered, 0, cells);
+            while (history.position() < position) {
+                int move = history.stepForward();
+                entered[MoveHistory.cell(move)] = (byte) MoveHistory.to(move);
+            }
+            boxesLeftToEnter = countEmpty(entered);
+            changes += cells;
+            buildIndex();
+            fireBoardChanged();
+            return;
+        }
+        while (history.position() > position) {
+            int move = history.stepBack();
+            setEntered(MoveHistory.cell(move), MoveHistory.from(move));
+        }
+        while (history.position() < position) {
+            int move = history.stepForward();
+            setEntered(MoveHistory.cell(move), MoveHistory.to(move));
         }
     }
 
@@ -162,8 +539,20 @@ public class Boxes implements Serializable {
      * Startar ett nytt spel med samma svårighetsnivå.
      */
     public void NewGame(){
-        this.boxesLeftToEnter = 81;
-        fillBoxes(this.level);
+        NewGame(SudokuUtilities.generateSudokuMatrix(this.level, this.size));
+    }
+
+    /**
+     * Startar ett nytt spel med samma svårighetsnivå från en redan genererad Sudoku-matris.
+     * Brädet får matrisens storlek.
+     *
+     * @param sudokuMatrix Matrisen där [row][col][0] är startvärdena och [row][col][1] lösningen.
+     */
+    public void NewGame(int[][][] sudokuMatrix){
+        long start = System.nanoTime();
+        fillBoxes(sudokuMatrix);
+        NEW_GAME_TIME.recordSince(start);
+        fireBoardChanged();
     }
 
     /**
@@ -172,8 +561,18 @@ public class Boxes implements Serializable {
      * @param level Svårighetsnivån för det nya spelet.
      */
     public void NewGameNewLevel(SudokuLevel level){
-        this.boxesLeftToEnter = 81;
-        fillBoxes(level);
+        NewGameNewLevel(level, SudokuUtilities.generateSudokuMatrix(level, this.size));
+    }
+
+    /**
+     * Startar ett nytt spel med en angiven svårighetsnivå från en redan genererad Sudoku-matris.
+     *
+     * @param level Svårighetsnivån för det nya spelet.
+     * @param sudokuMatrix Matrisen där [row][col][0] är startvärdena och [row][col][1] lösningen.
+     */
+    public void NewGameNewLevel(SudokuLevel level, int[][][] sudokuMatrix){
+        this.level = level;
+        NewGame(sudokuMatrix);
     }
 
     /**
@@ -186,8 +585,9 @@ public class Boxes implements Serializable {
         info.append("1. Välj en ruta.").append("\n")
                 .append("2. Välj ett nummer.").append("\n")
                 .append("För att rensa en ruta: Välj en ruta och tryck 'C'.").append("\n")
-                .append("Tryck på 'Hint' för att automatiskt fylla i en korrekt siffra i en ruta.").append("\n")
+                .append("Tryck på 'Hint' för att fylla i nästa siffra som kan hittas logiskt, eller rätta ett fel.").append("\n")
                 .append("Tryck på 'Check' för att verifiera din framsteg.").append("\n")
+                .append("En siffra som krockar med en annan i samma rad, kolumn eller block visas i rött.").append("\n")
                 .append("Du vinner när varje ruta har rätt nummer!").append("\n\n")
                 .append("Spelregler:").append("\n")
                 .append("- Varje rad, kolumn och block (3x3) måste innehålla siffror 1 till 9 utan upprepningar.").append("\n")
@@ -198,66 +598,236 @@ public class Boxes implements Serializable {
 
 
     /**
-     * Fyller rutorna med nummer från en genererad Sudoku-matris och blandar sedan rutorna.
+     * Fyller rutorna med nummer från en genererad Sudoku-matris.
      *
-     * @param level Svårighetsnivån för det genererade spelet.
+     * @param sudokuMatrix Matrisen där [row][col][0] är startvärdena och [row][col][1] lösningen.
      */
-    private void fillBoxes(SudokuLevel level) {
-        int[][][] sudokuMatrix = SudokuUtilities.generateSudokuMatrix(level);
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
+    private void fillBoxes(int[][][] sudokuMatrix) {
+        if (toEnter == null || sudokuMatrix.length != size) {
+            SudokuUtilities.sectionSize(sudokuMatrix.length);
+            this.size = sudokuMatrix.length;
+            this.cells = size * size;
+            this.toEnter = new byte[cells];
+            this.entered = new byte[cells];
+            this.states = new byte[cells];
+        }
+        this.boxesLeftToEnter = cells;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int cell = row * size + col;
+                toEnter[cell] = (byte) sudokuMatrix[row][col][1];
+                entered[cell] = (byte) sudokuMatrix[row][col][0];
                 if (sudokuMatrix[row][col][0] != 0) {
-                    boxes[row][col] = new Box(sudokuMatrix[row][col][1], sudokuMatrix[row][col][0], StateOfBox.KNOWN);
+                    states[cell] = KNOWN;
                     this.boxesLeftToEnter--;
                 } else {
-                    boxes[row][col] = new Box(sudokuMatrix[row][col][1], sudokuMatrix[row][col][0], StateOfBox.TO_ENTER);
+                    states[cell] = TO_ENTER;
                 }
             }
         }
-        blendBoxes();
+        changes += cells;
+        buildIndex();
+        resetHistory();
     }
 
     /**
-     * Blandar rutorna genom att byta positioner på två olika nummer i rutorna.
+     * Bygger om indexet över siffrorna i varje enhet från de inskrivna värdena.
      */
-    private void blendBoxes() {
-        Random random = new Random();
-        int firstNumber, secondNumber;
-        do {
-            firstNumber = random.nextInt(9) + 1;
-            secondNumber = random.nextInt(9) + 1;
-        } while (firstNumber == secondNumber);
-
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                if (boxes[row][col].getToEnter() == firstNumber) {
-                    for (; row < GRID_SIZE; ) {
-                        for (int newCol = 0; newCol < GRID_SIZE; newCol++) {
-                            if (boxes[row][newCol].getToEnter() == secondNumber) {
-                                Box tmp = boxes[row][col];
-                                boxes[row][col] = boxes[row][newCol];
-                                boxes[row][newCol] = tmp;
-                                break;
-                            }
-                        }
-                        break;
-                    }
-                    break;
-                }
+    private void buildIndex() {
+        if (geometry == null || geometry.size != size) {
+            this.geometry = SudokuGeometry.of(size);
+            this.digitCounts = new byte[geometry.units * (size + 1)];
+            this.unitDigits = new long[geometry.units];
+        } else {
+            Arrays.fill(digitCounts, (byte) 0);
+            Arrays.fill(unitDigits, 0L);
+        }
+        this.conflicts = 0;
+        this.wrongEntries = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (entered[cell] != 0) index(cell, entered[cell], 1, false);
+        }
+    }
+
+    /**
+     * Lägger till eller tar bort en siffra i en ruta ur indexet, i rutans rad, kolumn och block.
+     *
+     * @param delta 1 när siffran skrivs in, -1 när den tas bort.
+     * @param notify Om rutor vars krock med en annan ruta upphör eller börjar, och tomma grannar
+     *               vars kandidater ändras, ska meddelas lyssnarna.
+     */
+    private void index(int cell, int digit, int delta, boolean notify) {
+        if (digit != toEnter[cell]) wrongEntries += delta;
+        boolean candidatesChanged = indexUnit(geometry.rowOf[cell], cell, digit, delta, notify);
+        candidatesChanged |= indexUnit(size + geometry.colOf[cell], cell, digit, delta, notify);
+        candidatesChanged |= indexUnit(2 * size + geometry.sectionOf[cell], cell, digit, delta, notify);
+        if (notify && candidatesChanged && !listeners.isEmpty()) {
+            int[] peers = geometry.peers[cell];
+            for (int i = 0; i < peers.length; i++) {
+                if (entered[peers[i]] == 0) fireCandidatesChanged(peers[i]);
+            }
+        }
+    }
+
+    /**
+     * Uppdaterar en enhet i indexet.
+     *
+     * @return Sant om siffran kom till eller försvann ur enheten, så att grannarnas kandidater ändrades.
+     */
+    private boolean indexUnit(int unit, int cell, int digit, int delta, boolean notify) {
+        int slot = unit * (size + 1) + digit;
+        int before = digitCounts[slot];
+        int after = before + delta;
+        digitCounts[slot] = (byte) after;
+        if (after == 0) {
+            unitDigits[unit] &= ~SudokuGeometry.bit(digit);
+        } else {
+            unitDigits[unit] |= SudokuGeometry.bit(digit);
+        }
+        if (before < 2 && after >= 2) conflicts++;
+        if (before >= 2 && after < 2) conflicts--;
+        // the other cell with the digit starts or stops conflicting only when the count passes 1-2
+        if (notify && before + after == 3) {
+            int[] unitCells = geometry.unitCells[unit];
+            for (int i = 0; i < size; i++) {
+                int peer = unitCells[i];
+                if (peer != cell && entered[peer] == digit) fireBoxChanged(peer);
             }
         }
+        return before == 0 || after == 0;
+    }
+
+    /**
+     * Skriver in en siffra i en ruta, eller rensar den med noll, och lägger draget i historiken.
+     *
+     * @param continues Sant om draget hör till samma åtgärd som föregående drag.
+     */
+    private void play(int cell, int digit, boolean continues) {
+        int from = entered[cell];
+        MOVES.increment();
+        setEntered(cell, digit);
+        history.record(cell, from, digit, continues, entered);
+    }
+
+    /**
+     * Skriver in en siffra i en ruta, eller rensar den med noll, och uppdaterar indexet,
+     * antalet kvarvarande rutor och lyssnarna.
+     */
+    private void setEntered(int cell, int digit) {
+        if (entered[cell] == 0) {
+            boxesLeftToEnter--;
+        } else {
+            index(cell, entered[cell], -1, true);
+        }
+        entered[cell] = (byte) digit;
+        changes++;
+        if (digit == 0) {
+            boxesLeftToEnter++;
+        } else {
+            index(cell, digit, 1, true);
+        }
+        fireBoxChanged(cell);
+    }
+
+    private void resetHistory() {
+        if (history == null) {
+            history = new MoveHistory(entered);
+        } else {
+            history.reset(entered);
+        }
     }
 
+    private int digitCount(int unit, int digit) {
+        return digitCounts[unit * (size + 1) + digit];
+    }
 
+    /**
+     * Kontrollerar om det inskrivna värdet i en ruta är korrekt, på samma sätt som
+     * {@link Box#isEnteredCorrect()}: en korrekt ruta blir KNOWN, och en KNOWN-ruta blir RIGHT.
+     */
+    private boolean isEnteredCorrect(int cell) {
+        if(entered[cell] == toEnter[cell]) {
+            states[cell] = states[cell] != KNOWN ? KNOWN : RIGHT;
+            fireBoxChanged(cell);
+            return true;
+        }
+        return false;
+    }
+
+    private void fireBoxChanged(int cell) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).boxChanged(cell / size, cell % size);
+        }
+    }
+
+    private void fireCandidatesChanged(int cell) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).candidatesChanged(cell / size, cell % size);
+        }
+    }
+
+    private void fireBoardChanged() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).boardChanged();
+        }
+    }
+
+    private static int countEmpty(byte[] entered) {
+        int empty = 0;
+        for (byte value : entered) {
+            if (value == 0) empty++;
+        }
+        return empty;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("boxes", getBoxes());
+        fields.put("boxesLeftToEnter", boxesLeftToEnter);
+        fields.put("level", level);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Box[][] boxes = (Box[][]) fields.get("boxes", null);
+        if (boxes == null) throw new InvalidObjectException("missing boxes");
+        try {
+            SudokuUtilities.sectionSize(boxes.length);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException("board size " + boxes.length);
+        }
+        this.size = boxes.length;
+        this.cells = size * size;
+        this.level = (SudokuLevel) fields.get("level", null);
+        this.toEnter = new byte[cells];
+        this.entered = new byte[cells];
+        this.states = new byte[cells];
+        for (int row = 0; row < size; row++) {
+            if (boxes[row] == null || boxes[row].length != size) throw new InvalidObjectException("missing row " + row);
+            for (int col = 0; col < size; col++) {
+                Box box = boxes[row][col];
+                if (box == null || box.getStateOfbox() == null) throw new InvalidObjectException("missing box " + row + "," + col);
+                int cell = row * size + col;
+                toEnter[cell] = (byte) box.getToEnter();
+                entered[cell] = (byte) box.getEntered();
+                states[cell] = (byte) box.getStateOfbox().ordinal();
+            }
+        }
+        this.boxesLeftToEnter = countEmpty(entered);
+        this.listeners = new ArrayList<>();
+        buildIndex();
+        resetHistory();
+    }
 
     @Override
     public String toString() {
         StringBuilder info = new StringBuilder();
         info.append("[");
-        for (int row = 0; row < GRID_SIZE; row++) {
+        for (int row = 0; row < size; row++) {
             info.append("{");
-            for (int col = 0; col < GRID_SIZE; col++) {
-                info.append(boxes[row][col].getEntered()).append(", ");
+            for (int col = 0; col < size; col++) {
+                info.append(getEntered(row, col)).append(", ");
             }
             info.append("}").append("\n");
         }
@@ -0,0 +1,31 @@
+package se.kth.qusaiaha.sudoku.model;
+
+/**
+ * Lyssnar på ändringar i Sudoku-brädet, så att en vy bara behöver rita om de rutor som ändrats.
+ */
+public interface BoxesListener {
+
+    /**
+     * Anropas när det inskrivna värdet eller tillståndet i en ruta har ändrats.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     */
+    void boxChanged(int row, int col);
+
+    /**
+     * Anropas när hela brädet har bytts ut, till exempel vid ett nytt spel.
+     */
+    void boardChanged();
+
+    /**
+     * Anropas när kandidaterna i en tom ruta har ändrats för att en siffra skrevs in eller
+     * togs bort i en av dess grannar, se {@link ReadOnlyBoxes#getCandidates(int, int)}.
+     * Standardimplementationen gör ingenting.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     */
+    default void candidatesChanged(int row, int col) {
+    }
+}
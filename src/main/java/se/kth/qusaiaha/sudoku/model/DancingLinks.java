@@ -0,0 +1,283 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.util.Arrays;
+
+import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+
+/**
+ * Exakt täckning (Knuths Algorithm X) med Dancing Links för att räkna lösningar.
+ * Matrisen har en kolumn per villkor (ruta, rad-siffra, kolumn-siffra och block-siffra)
+ * och en rad per möjlig placering av en siffra i en ruta. Länkarna ligger i
+ * förallokerade int-arrayer som återställs från en mall inför varje pussel,
+ * så räkningen skapar inga objekt. Mallen byggs en gång per brädstorlek.
+ * En instans är inte trådsäker.
+ */
+public class DancingLinks {
+    private static final int ROOT = 0;
+    private static final Template[] TEMPLATES = new Template[SudokuUtilities.MAX_SECTION_SIZE + 1];
+
+    /**
+     * De oförändrade länkarna för en brädstorlek, delade mellan alla instanser.
+     */
+    private static final class Template {
+        final int columns;
+        final int firstRowNode;
+        final int nodes;
+        final int[] left;
+        final int[] right;
+        final int[] up;
+        final int[] down;
+        final int[] size;
+        final int[] column;
+
+        Template(SudokuGeometry geometry) {
+            int gridSize = geometry.size;
+            int cells = geometry.cells;
+            int rows = cells * gridSize;
+            this.columns = 4 * cells;
+            this.firstRowNode = 1 + columns;
+            this.nodes = firstRowNode + 4 * rows;
+            this.left = new int[nodes];
+            this.right = new int[nodes];
+            this.up = new int[nodes];
+            this.down = new int[nodes];
+            this.size = new int[1 + columns];
+            this.column = new int[nodes];
+
+            for (int header = 0; header <= columns; header++) {
+                left[header] = header == 0 ? columns : header - 1;
+                right[header] = header == columns ? 0 : header + 1;
+                up[header] = header;
+                down[header] = header;
+                column[header] = header;
+            }
+            int[] constraints = new int[4];
+            for (int row = 0; row < rows; row++) {
+                int cell = row / gridSize;
+                int digit = row % gridSize;
+                constraints[0] = 1 + cell;
+                constraints[1] = 1 + cells + geometry.rowOf[cell] * gridSize + digit;
+                constraints[2] = 1 + 2 * cells + geometry.colOf[cell] * gridSize + digit;
+                constraints[3] = 1 + 3 * cells + geometry.sectionOf[cell] * gridSize + digit;
+                int first = firstRowNode + 4 * row;
+                for (int i = 0; i < 4; i++) {
+                    int node = first + i;
+                    int header = constraints[i];
+                    left[node] = first + (i + 3) % 4;
+                    right[node] = first + (i + 1) % 4;
+                    column[node] = header;
+                    up[node] = up[header];
+                    down[node] = header;
+                    down[up[header]] = node;
+                    up[header] = node;
+                    size[header]++;
+                }
+            }
+        }
+
+        static Template of(SudokuGeometry geometry) {
+            synchronized (TEMPLATES) {
+                Template template = TEMPLATES[geometry.sectionSize];
+                if (template == null) {
+                    template = new Template(geometry);
+                    TEMPLATES[geometry.sectionSize] = template;
+                }
+                return template;
+            }
+        }
+    }
+
+    private final SudokuGeometry geometry;
+    private final Template template;
+    private final int gridSize;
+    private final int cells;
+    private final int firstRowNode;
+    private final int[] column;
+    private final int[] left;
+    private final int[] right;
+    private final int[] up;
+    private final int[] down;
+    private final int[] size;
+    private final boolean[] covered;
+    private final int[] chosen;
+    private final int[] solution;
+    private final int[] givens;
+    private int solutions;
+    private int limit;
+
+    /**
+     * Konstruerar en räknare för vanliga 9x9-bräden.
+     */
+    public DancingLinks() {
+        this(GRID_SIZE);
+    }
+
+    /**
+     * Konstruerar en räknare för bräden med en given storlek.
+     *
+     * @param gridSize Antalet rutor per rad, till exempel 4, 9, 16 eller 25.
+     * @throws IllegalArgumentException Om storleken inte stöds.
+     */
+    public DancingLinks(int gridSize) {
+        this.geometry = SudokuGeometry.of(gridSize);
+        this.template = Template.of(geometry);
+        this.gridSize = gridSize;
+        this.cells = geometry.cells;
+        this.firstRowNode = template.firstRowNode;
+        this.column = template.column;
+        this.left = new int[template.nodes];
+        this.right = new int[template.nodes];
+        this.up = new int[template.nodes];
+        this.down = new int[template.nodes];
+        this.size = new int[1 + template.columns];
+        this.covered = new boolean[1 + template.columns];
+        this.chosen = new int[cells];
+        this.solution = new int[cells];
+        this.givens = new int[cells];
+    }
+
+    /**
+     * Räknar lösningarna till ett pussel i matrislayouten från
+     * {@link SudokuUtilities#generateSudokuMatrix(SudokuLevel)}. Endast startvärdena
+     * i [row][col][0] läses.
+     *
+     * @param sudokuMatrix Matrisen med startvärden, noll för en tom ruta.
+     * @param limit Räkningen avbryts när så många lösningar har hittats.
+     * @return Antalet lösningar, högst limit.
+     */
+    public int countSolutions(int[][][] sudokuMatrix, int limit) {
+        if (sudokuMatrix.length != gridSize) throw new IllegalArgumentException("matrix size " + sudokuMatrix.length);
+        for (int cell = 0; cell < cells; cell++) {
+            givens[cell] = sudokuMatrix[geometry.rowOf[cell]][geometry.colOf[cell]][0];
+        }
+        return count(limit);
+    }
+
+    /**
+     * Räknar lösningarna till ett pussel med alla rutor i radordning.
+     *
+     * @param cells Rutorna i radordning, noll för en tom ruta.
+     * @param limit Räkningen avbryts när så många lösningar har hittats.
+     * @return Antalet lösningar, högst limit.
+     */
+    public int countSolutions(int[] cells, int limit) {
+        if (cells.length != this.cells) throw new IllegalArgumentException("cells length " + cells.length);
+        System.arraycopy(cells, 0, givens, 0, this.cells);
+        return count(limit);
+    }
+
+    /**
+     * Kontrollerar att pusslet har exakt en lösning. Sökningen avbryts vid den andra lösningen.
+     *
+     * @param cells Rutorna i radordning, noll för en tom ruta.
+     * @return Sant om pusslet har exakt en lösning, annars falskt.
+     */
+    public boolean hasUniqueSolution(int[] cells) {
+        return countSolutions(cells, 2) == 1;
+    }
+
+    /**
+     * Kontrollerar att pusslet i matrislayouten har exakt en lösning.
+     *
+     * @param sudokuMatrix Matrisen med startvärden, noll för en tom ruta.
+     * @return Sant om pusslet har exakt en lösning, annars falskt.
+     */
+    public boolean hasUniqueSolution(int[][][] sudokuMatrix) {
+        return countSolutions(sudokuMatrix, 2) == 1;
+    }
+
+    /**
+     * Kopierar den första lösningen från den senaste räkningen.
+     *
+     * @param out Array med alla rutor som lösningen skrivs till i radordning.
+     * @return Sant om den senaste räkningen hittade minst en lösning, annars falskt.
+     */
+    public boolean getSolution(int[] out) {
+        if (solutions == 0) return false;
+        System.arraycopy(solution, 0, out, 0, cells);
+        return true;
+    }
+
+    private int count(int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("limit " + limit);
+        int nodes = template.nodes;
+        System.arraycopy(template.left, 0, left, 0, nodes);
+        System.arraycopy(template.right, 0, right, 0, nodes);
+        System.arraycopy(template.up, 0, up, 0, nodes);
+        System.arraycopy(template.down, 0, down, 0, nodes);
+        System.arraycopy(template.size, 0, size, 0, size.length);
+        Arrays.fill(covered, false);
+        this.solutions = 0;
+        this.limit = limit;
+
+        for (int cell = 0; cell < cells; cell++) {
+            int digit = givens[cell];
+            if (digit == 0) continue;
+            if (digit < 0 || digit > gridSize) return 0;
+            int first = firstRowNode + 4 * (cell * gridSize + digit - 1);
+            for (int node = first; node < first + 4; node++) {
+                if (covered[column[node]]) return 0;
+            }
+            for (int node = first; node < first + 4; node++) {
+                cover(column[node]);
+            }
+        }
+        search(0);
+        return solutions;
+    }
+
+    private void search(int depth) {
+        if (right[ROOT] == ROOT) {
+            if (solutions++ == 0) recordSolution(depth);
+            return;
+        }
+        int best = right[ROOT];
+        for (int c = right[best]; c != ROOT; c = right[c]) {
+            if (size[c] < size[best]) best = c;
+        }
+        if (size[best] == 0) return;
+
+        cover(best);
+        for (int row = down[best]; row != best && solutions < limit; row = down[row]) {
+            chosen[depth] = row;
+            for (int node = right[row]; node != row; node = right[node]) cover(column[node]);
+            search(depth + 1);
+            for (int node = left[row]; node != row; node = left[node]) uncover(column[node]);
+        }
+        uncover(best);
+    }
+
+    private void recordSolution(int depth) {
+        System.arraycopy(givens, 0, solution, 0, cells);
+        for (int i = 0; i < depth; i++) {
+            int row = (chosen[i] - firstRowNode) / 4;
+            solution[row / gridSize] = row % gridSize + 1;
+        }
+    }
+
+    private void cover(int header) {
+        covered[header] = true;
+        right[left[header]] = right[header];
+        left[right[header]] = left[header];
+        for (int row = down[header]; row != header; row = down[row]) {
+            for (int node = right[row]; node != row; node = right[node]) {
+                up[down[node]] = up[node];
+                down[up[node]] = down[node];
+                size[column[node]]--;
+            }
+        }
+    }
+
+    private void uncover(int header) {
+        for (int row = up[header]; row != header; row = up[row]) {
+            for (int node = left[row]; node != row; node = left[node]) {
+                size[column[node]]++;
+                up[down[node]] = node;
+                down[up[node]] = node;
+            }
+        }
+        right[left[header]] = header;
+        left[right[header]] = header;
+        covered[header] = false;
+    }
+}
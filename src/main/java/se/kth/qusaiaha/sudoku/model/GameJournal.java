@@ -0,0 +1,350 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Sparar det pågående spelet automatiskt i en katalog så att det kan återskapas efter en krasch.
+ * <p>
+ * Katalogen innehåller en ögonblicksbild av spelet i {@link SudokuIO}s format och en journal
+ * som bara växer, med en post per ändrad ruta:
+ * <pre>
+ * journal  magic "SDKJ" (4 byte), crc32 för ögonblicksbilden (4 byte), poster
+ * post     ruta (2 byte), inskriven siffra (1 byte), StateOfBox.ordinal() (1 byte), crc32 (4 byte)
+ * </pre>
+ * Journalen lyssnar på spelet och lägger bara posterna i en buffert i minnet, så JavaFX-tråden
+ * gör aldrig någon I/O. En bakgrundstråd skriver bufferten var {@value #FLUSH_MILLIS}:e
+ * millisekund och tvingar ut den till disken med en enda fsync för alla poster sedan förra
+ * gången. Ett nytt spel, ett laddat spel eller en journal med fler än {@value #COMPACT_RECORDS}
+ * poster ger en ny ögonblicksbild och en tom journal.
+ * <p>
+ * Vid återskapandet läses ögonblicksbilden och posterna spelas upp tills journalen tar slut
+ * eller en post är trasig, till exempel halvskriven vid en krasch. En journal vars crc32
+ * inte hör till ögonblicksbilden skrevs före den och hoppas över. Högst de senaste
+ * {@value #FLUSH_MILLIS} millisekundernas drag kan alltså gå förlorade.
+ * <p>
+ * Misslyckas en skrivning läggs den senaste ögonblicksbilden och alla poster sedan dess i kö
+ * igen, så att nästa skrivning bygger upp journalen från början. Felet rapporteras av
+ * {@link #close()} tills en ögonblicksbild har skrivits.
+ */
+public class GameJournal implements BoxesListener, Closeable {
+    /** Hur ofta bakgrundstråden skriver och tvingar ut journalen till disken. */
+    public static final long FLUSH_MILLIS = 200;
+    /** Hur många poster journalen får innehålla innan en ny ögonblicksbild skrivs. */
+    public static final int COMPACT_RECORDS = 4096;
+
+    private static final String SNAPSHOT_FILE = "last.sudoku";
+    private static final String JOURNAL_FILE = "last.journal";
+    private static final int MAGIC = 0x53444B4A;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 8;
+    private static final int RECORD_PAYLOAD = 4;
+    private static final LatencyHistogram FLUSH_TIME = Metrics.histogram("io.journalFlush");
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("io.bytesWritten");
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final ScheduledExecutorService writer;
+    private final CRC32 crc = new CRC32();
+
+    // written on the JavaFX thread, handed to the writer under the lock on this
+    private ByteBuffer pending = ByteBuffer.allocate(64 * RECORD_BYTES);
+    private ByteBuffer pendingSnapshot;
+    // only touched by the writer thread
+    private ByteBuffer writing = ByteBuffer.allocate(64 * RECORD_BYTES);
+    private ByteBuffer lastSnapshot;
+    private ByteBuffer journaled = ByteBuffer.allocate(64 * RECORD_BYTES);
+    private FileChannel channel;
+    private IOException failure;
+
+    // only touched by the JavaFX thread
+    private Boxes model;
+    private byte[] shadowEntered;
+    private byte[] shadowStates;
+    private int recordsSinceSnapshot;
+
+    /**
+     * Konstruerar en journal i en katalog och startar bakgrundstråden som skriver den.
+     * Katalogen skapas om den inte finns.
+     *
+     * @param directory Katalogen där ögonblicksbilden och journalen sparas.
+     * @throws IOException Om katalogen inte kan skapas.
+     */
+    public GameJournal(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        this.snapshotFile = directory.toPath().resolve(SNAPSHOT_FILE);
+        this.journalFile = directory.toPath().resolve(JOURNAL_FILE);
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Återskapar det senaste spelet från en katalog.
+     *
+     * @param directory Katalogen där ögonblicksbilden och journalen sparades.
+     * @return Spelet som det såg ut efter den sista posten som hann skrivas,
+     * eller null om katalogen inte innehåller något spel.
+     * @throws IOException Om ögonblicksbilden inte kan läsas eller är skadad.
+     */
+    public static Boxes recover(File directory) throws IOException {
+        Path snapshotFile = directory.toPath().resolve(SNAPSHOT_FILE);
+        if (!Files.isRegularFile(snapshotFile)) return null;
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if (snapshot.remaining() < 4) throw new EOFException("truncated game data");
+        Boxes saved = SudokuIO.decode(snapshot);
+        int snapshotCrc = snapshot.getInt(snapshot.limit() - 4);
+
+        int cells = saved.getSize() * saved.getSize();
+        byte[] toEnter = new byte[cells];
+        byte[] entered = new byte[cells];
+        byte[] states = new byte[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            toEnter[cell] = (byte) saved.toEnterAt(cell);
+            entered[cell] = (byte) saved.enteredAt(cell);
+            states[cell] = (byte) saved.stateAt(cell);
+        }
+        Path journalFile = directory.toPath().resolve(JOURNAL_FILE);
+        if (Files.isRegularFile(journalFile)) {
+            ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+            if (journal.remaining() >= HEADER_BYTES && journal.getInt() == MAGIC && journal.getInt() == snapshotCrc) {
+                replay(journal, saved.getSize(), entered, states);
+            }
+        }
+        return new Boxes(saved.getLevel(), saved.getSize(), toEnter, entered, states);
+    }
+
+    /**
+     * Spelar upp posterna i en journal tills den tar slut eller en post är trasig.
+     */
+    private static void replay(ByteBuffer journal, int size, byte[] entered, byte[] states) {
+        CRC32 crc = new CRC32();
+        int stateCount = StateOfBox.values().length;
+        while (journal.remaining() >= RECORD_BYTES) {
+            int start = journal.position();
+            int cell = journal.getShort() & 0xFFFF;
+            int digit = journal.get();
+            int state = journal.get();
+            long expected = journal.getInt() & 0xFFFFFFFFL;
+            crc.reset();
+            crc.update(journal.array(), start, RECORD_PAYLOAD);
+            if (crc.getValue() != expected) return;
+            if (cell >= entered.length || digit < 0 || digit > size || state < 0 || state >= stateCount) return;
+            entered[cell] = (byte) digit;
+            states[cell] = (byte) state;
+        }
+    }
+
+    /**
+     * Börjar spara ett spel, och slutar spara det spel som sparades tidigare.
+     * En ögonblicksbild av spelet skrivs i bakgrunden.
+     *
+     * @param model Spelet som ska sparas.
+     */
+    public void attach(Boxes model) {
+        if (this.model != null) this.model.removeListener(this);
+        this.model = model;
+        model.addListener(this);
+        snapshot();
+    }
+
+    @Override
+    public void boxChanged(int row, int col) {
+        int cell = row * model.getSize() + col;
+        byte digit = (byte) model.enteredAt(cell);
+        byte state = (byte) model.stateAt(cell);
+        // a peer is also notified when it starts or stops conflicting, without changing
+        if (shadowEntered[cell] == digit && shadowStates[cell] == state) return;
+        shadowEntered[cell] = digit;
+        shadowStates[cell] = state;
+        if (++recordsSinceSnapshot > COMPACT_RECORDS) {
+            snapshot();
+            return;
+        }
+        synchronized (this) {
+            pending = ensureRemaining(pending, RECORD_BYTES);
+            int start = pending.position();
+            pending.putShort((short) cell).put(digit).put(state);
+            crc.reset();
+            crc.update(pending.array(), start, RECORD_PAYLOAD);
+            pending.putInt((int) crc.getValue());
+        }
+    }
+
+    @Override
+    public void boardChanged() {
+        snapshot();
+    }
+
+    /**
+     * Lägger en ny ögonblicksbild av spelet i kö. Poster som ännu inte har skrivits
+     * gäller den gamla ögonblicksbilden och kastas.
+     */
+    private void snapshot() {
+        int cells = model.getSize() * model.getSize();
+        if (shadowEntered == null || shadowEntered.length != cells) {
+            shadowEntered = new byte[cells];
+            shadowStates = new byte[cells];
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            shadowEntered[cell] = (byte) model.enteredAt(cell);
+            shadowStates[cell] = (byte) model.stateAt(cell);
+        }
+        recordsSinceSnapshot = 0;
+        ByteBuffer encoded = ByteBuffer.allocate(SudokuIO.fileBytes(SudokuIO.VERSION, model.getSize()));
+        SudokuIO.encode(model, encoded);
+        encoded.flip();
+        synchronized (this) {
+            pendingSnapshot = encoded;
+            pending.clear();
+        }
+    }
+
+    /**
+     * Skriver det som har samlats sedan förra gången och tvingar ut det till disken.
+     * Körs i bakgrundstråden.
+     */
+    private void flush() {
+        ByteBuffer snapshot;
+        synchronized (this) {
+            snapshot = pendingSnapshot;
+            pendingSnapshot = null;
+            ByteBuffer swap = writing;
+            writing = pending;
+            pending = swap;
+            pending.clear();
+        }
+        writing.flip();
+        if (snapshot == null && !writing.hasRemaining()) return;
+        long start = System.nanoTime();
+        PersistEvent event = new PersistEvent();
+        event.begin();
+        long bytes = 0;
+        if (snapshot != null) {
+            lastSnapshot = snapshot;
+            journaled.clear();
+        }
+        // kept until the next snapshot, so the journal can be rebuilt after a failed write
+        journaled = ensureRemaining(journaled, writing.remaining());
+        journaled.put(writing.duplicate());
+        try {
+            if (snapshot != null) {
+                int snapshotCrc = snapshot.getInt(snapshot.limit() - 4);
+                bytes += snapshot.remaining() + HEADER_BYTES;
+                SudokuIO.writeAtomically(snapshotFile, snapshot.duplicate());
+                startJournal(snapshotCrc);
+                failure = null;
+            }
+            if (channel != null && writing.hasRemaining()) {
+                bytes += writing.remaining();
+                while (writing.hasRemaining()) channel.write(writing);
+                channel.force(false);
+            }
+            BYTES_WRITTEN.add(bytes);
+            FLUSH_TIME.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = PersistEvent.JOURNAL;
+                event.path = (snapshot != null ? snapshotFile : journalFile).toString();
+                event.bytes = bytes;
+                event.commit();
+            }
+        } catch (IOException e) {
+            failed(e);
+        } catch (RuntimeException e) {
+            // an exception escaping would cancel the scheduled flushes for good
+            failed(new IOException(e));
+        }
+    }
+
+    /**
+     * Kommer ihåg ett fel och lägger den senaste ögonblicksbilden och posterna sedan dess
+     * i kö igen, om inte spelet redan har lagt en nyare ögonblicksbild i kö.
+     */
+    private void failed(IOException e) {
+        if (failure == null) System.err.println("Autosave failed: " + e);
+        failure = e;
+        closeChannel();
+        if (lastSnapshot == null) return;
+        synchronized (this) {
+            if (pendingSnapshot != null) return;
+            pendingSnapshot = lastSnapshot;
+            journaled.flip();
+            pending.flip();
+            ByteBuffer records = ByteBuffer.allocate(Math.max(64 * RECORD_BYTES, journaled.remaining() + pending.remaining()));
+            records.put(journaled).put(pending);
+            pending = records;
+        }
+        journaled.clear();
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) return buffer;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * Börjar en tom journal för en ögonblicksbild som just har skrivits.
+     */
+    private void startJournal(int snapshotCrc) throws IOException {
+        closeChannel();
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(snapshotCrc);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header);
+        channel.force(false);
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the journal is rewritten from a new snapshot anyway
+        }
+        channel = null;
+    }
+
+    /**
+     * Slutar lyssna på spelet, skriver det som återstår och stoppar bakgrundstråden.
+     *
+     * @throws IOException Om det sista som återstod inte kunde skrivas, eller om
+     * bakgrundstråden inte hann bli klar inom fem sekunder.
+     */
+    @Override
+    public void close() throws IOException {
+        if (model != null) model.removeListener(this);
+        writer.shutdown();
+        boolean stopped = false;
+        try {
+            stopped = writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // flushing here while the writer is still busy would race it on the same channel
+        if (!stopped) throw new IOException("autosave did not finish in time, the last moves may be lost");
+        // the writer has stopped, so the last flush runs in the calling thread
+        flush();
+        closeChannel();
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,30 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * En händelse för JDK Flight Recorder när {@link SudokuGenerator} har genererat ett pussel.
+ * Händelsens tid är genereringstiden.
+ */
+@Name("se.kth.qusaiaha.sudoku.Generate")
+@Label("Puzzle Generation")
+@Category({"Sudoku", "Model"})
+@Description("A new puzzle was generated")
+@StackTrace(false)
+/*package private*/
+final class GenerateEvent extends Event {
+    @Label("Level")
+    String level;
+
+    @Label("Size")
+    @Description("Cells per row")
+    int size;
+
+    @Label("Clues")
+    int clues;
+}
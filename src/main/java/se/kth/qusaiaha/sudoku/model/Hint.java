@@ -0,0 +1,90 @@
+package se.kth.qusaiaha.sudoku.model;
+
+/**
+ * En ledtråd från {@link Boxes#hint()}: vilken siffra som skrevs in var, med vilken teknik
+ * den kan hittas och vilka rutor som ingår i resonemanget. En ledtråd som rättar en felaktigt
+ * ifylld ruta har ingen teknik.
+ */
+public class Hint {
+    private final int row;
+    private final int col;
+    private final int digit;
+    private final SudokuTechnique technique;
+    private final int size;
+    private final boolean[] involved;
+
+    /*package private*/
+    Hint(int row, int col, int digit, SudokuTechnique technique, int size, boolean[] involved) {
+        this.row = row;
+        this.col = col;
+        this.digit = digit;
+        this.technique = technique;
+        this.size = size;
+        this.involved = involved;
+    }
+
+    /**
+     * @return Raden där siffran skrevs in.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return Kolumnen där siffran skrevs in.
+     */
+    public int getCol() {
+        return col;
+    }
+
+    /**
+     * @return Siffran som skrevs in.
+     */
+    public int getDigit() {
+        return digit;
+    }
+
+    /**
+     * @return Den svåraste tekniken som behövdes, eller null om ledtråden rättade ett fel.
+     */
+    public SudokuTechnique getTechnique() {
+        return technique;
+    }
+
+    /**
+     * @return Sant om ledtråden rättade en felaktigt ifylld ruta.
+     */
+    public boolean isCorrection() {
+        return technique == null;
+    }
+
+    /**
+     * Kontrollerar om en ruta ingår i ledtråden, antingen som rutan som fylldes i eller
+     * som en del av mönstret som ledde fram till siffran.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     * @return Sant om rutan ska markeras.
+     */
+    public boolean involves(int row, int col) {
+        return (row == this.row && col == this.col) || involved[row * size + col];
+    }
+
+    /**
+     * Beskriver ledtråden för spelaren.
+     *
+     * @return En mening på svenska.
+     */
+    public String getDescription() {
+        String where = "Rad " + (row + 1) + ", kolumn " + (col + 1);
+        if (isCorrection()) {
+            return where + " var fel och ska vara " + SudokuUtilities.digitText(digit) + ".";
+        }
+        return where + " ska vara " + SudokuUtilities.digitText(digit) + " (" + technique.getDisplayName() + ").";
+    }
+
+    @Override
+    public String toString() {
+        return getDescription();
+    }
+}
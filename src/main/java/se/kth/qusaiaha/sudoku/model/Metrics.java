@@ -0,0 +1,152 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ett register med räknare och tidshistogram för det som händer i spelet: kontrollerns
+ * åtgärder, ändringar i modellen, omritningar av brädet, generering av pussel och
+ * sparning och laddning.
+ * <p>
+ * Klasser som mäter hämtar sina histogram och räknare en gång, i statiska fält, och mäter
+ * sedan utan lås och utan att allokera:
+ * <pre>
+ * private static final LatencyHistogram GUESS = Metrics.histogram("controller.guess");
+ * ...
+ * long start = System.nanoTime();
+ * ...
+ * GUESS.recordSince(start);
+ * </pre>
+ * Registret kan visas som text med {@link #report()}, skrivas till en fil med jämna
+ * mellanrum med {@link #startDump(File, long)} och skickas till JDK Flight Recorder med
+ * {@link #enableFlightRecorder()}.
+ */
+public final class Metrics {
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static final AtomicBoolean flightRecorder = new AtomicBoolean();
+    private static ScheduledExecutorService dumper;
+    private static volatile File dumpFile;
+
+    private Metrics() {
+    }
+
+    /**
+     * Returnerar histogrammet med ett visst namn och skapar det första gången.
+     *
+     * @param name Namnet, till exempel "controller.guess".
+     * @return Histogrammet.
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Returnerar räknaren med ett visst namn och skapar den första gången.
+     *
+     * @param name Namnet, till exempel "io.bytesWritten".
+     * @return Räknaren.
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /*package private*/
+    static Iterable<LatencyHistogram> histograms() {
+        return histograms.values();
+    }
+
+    /**
+     * Nollställer alla histogram och räknare.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms.values()) histogram.reset();
+        for (LongAdder counter : counters.values()) counter.reset();
+    }
+
+    /**
+     * Skriver alla histogram och räknare som en tabell. Tiderna anges i mikrosekunder.
+     *
+     * @return Tabellen.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-22s %9s %10s %10s %10s %10s%n", "timer (us)", "count", "mean", "p50", "p99", "max"));
+        for (LatencyHistogram histogram : histograms.values()) {
+            long count = histogram.getCount();
+            if (count == 0) continue;
+            report.append(String.format("%-22s %9d %10.1f %10.1f %10.1f %10.1f%n", histogram.getName(), count,
+                    histogram.getMeanNanos() / 1e3, histogram.getPercentileNanos(50) / 1e3,
+                    histogram.getPercentileNanos(99) / 1e3, histogram.getMaxNanos() / 1e3));
+        }
+        report.append(String.format("%n%-22s %9s%n", "counter", "value"));
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            report.append(String.format("%-22s %9d%n", counter.getKey(), counter.getValue().sum()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Börjar skriva rapporten till en fil med jämna mellanrum i en bakgrundstråd. Filen
+     * ersätts varje gång, så den innehåller alltid en hel rapport.
+     *
+     * @param file Filen som rapporten skrivs till.
+     * @param periodMillis Tiden mellan skrivningarna i millisekunder.
+     */
+    public static synchronized void startDump(File file, long periodMillis) {
+        stopDump();
+        dumpFile = file;
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleWithFixedDelay(Metrics::dump, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Slutar skriva rapporten till filen och skriver den en sista gång.
+     */
+    public static synchronized void stopDump() {
+        if (dumper == null) return;
+        dumper.shutdown();
+        try {
+            dumper.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dumper = null;
+        dump();
+        dumpFile = null;
+    }
+
+    private static void dump() {
+        File file = dumpFile;
+        if (file == null) return;
+        String text = "# " + LocalDateTime.now().withNano(0).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + System.lineSeparator() + report();
+        try {
+            SudokuIO.writeAtomically(file.toPath(), ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            System.err.println("Could not write metrics: " + e);
+        }
+    }
+
+    /**
+     * Skickar histogrammen till JDK Flight Recorder som {@link MetricsEvent}, en händelse per
+     * histogram med jämna mellanrum, så länge en inspelning som har händelsen påslagen pågår.
+     */
+    public static void enableFlightRecorder() {
+        if (flightRecorder.compareAndSet(false, true)) MetricsEvent.register();
+    }
+}
@@ -0,0 +1,70 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * En ögonblicksbild av ett histogram i {@link Metrics} för JDK Flight Recorder. En händelse
+ * per histogram skickas var tionde sekund, eller så ofta som inspelningens inställningar
+ * för {@code se.kth.qusaiaha.sudoku.Metrics} anger.
+ */
+@Name("se.kth.qusaiaha.sudoku.Metrics")
+@Label("Sudoku Metrics")
+@Category("Sudoku")
+@Description("Latency histogram of a timed operation since the application started")
+@Period("10 s")
+@StackTrace(false)
+/*package private*/
+final class MetricsEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Count")
+    long count;
+
+    @Label("Mean")
+    @Timespan
+    long mean;
+
+    @Label("P50")
+    @Timespan
+    long p50;
+
+    @Label("P99")
+    @Timespan
+    long p99;
+
+    @Label("Max")
+    @Timespan
+    long max;
+
+    /**
+     * Registrerar händelsen hos Flight Recorder, som anropar den med jämna mellanrum
+     * medan en inspelning pågår.
+     */
+    static void register() {
+        FlightRecorder.addPeriodicEvent(MetricsEvent.class, MetricsEvent::emit);
+    }
+
+    private static void emit() {
+        for (LatencyHistogram histogram : Metrics.histograms()) {
+            long count = histogram.getCount();
+            if (count == 0) continue;
+            MetricsEvent event = new MetricsEvent();
+            event.operation = histogram.getName();
+            event.count = count;
+            event.mean = histogram.getMeanNanos();
+            event.p50 = histogram.getPercentileNanos(50);
+            event.p99 = histogram.getPercentileNanos(99);
+            event.max = histogram.getMaxNanos();
+            event.commit();
+        }
+    }
+}
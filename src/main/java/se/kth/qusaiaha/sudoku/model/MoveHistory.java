@@ -0,0 +1,175 @@
+package se.kth.qusaiaha.sudoku.model;
+
+/**
+ * Historiken för ett spel: en logg med ett packat int per drag och en ögonblicksbild av
+ * de inskrivna värdena var {@value #SNAPSHOT_INTERVAL}:e drag.
+ * <pre>
+ * bit  0-9   ruta
+ * bit 10-14  siffran före draget
+ * bit 15-19  siffran efter draget
+ * bit 20     draget hör till samma åtgärd som draget före, till exempel i rensa allt
+ * </pre>
+ * Drag före positionen är gjorda och drag efter den kan göras om. Ett nytt drag stryker
+ * dragen som kunde göras om. Loggen rymmer {@value #CAPACITY} drag; när den är full viks
+ * ungefär den äldre halvan in i den äldsta ögonblicksbilden, så minnet är begränsat (4 KB
+ * för loggen och 18 bilder med en byte per ruta) hur långt spelet än blir.
+ */
+/*package private*/
+final class MoveHistory {
+    static final int CAPACITY = 1024;
+    static final int SNAPSHOT_INTERVAL = 64;
+    private static final int FOLD = CAPACITY / 2;
+    private static final int DIGIT_BITS = 5;
+    private static final int CELL_MASK = (1 << 10) - 1;
+    private static final int DIGIT_MASK = (1 << DIGIT_BITS) - 1;
+    private static final int FROM_SHIFT = 10;
+    private static final int TO_SHIFT = FROM_SHIFT + DIGIT_BITS;
+    private static final int CONTINUES = 1 << (TO_SHIFT + DIGIT_BITS);
+
+    private int[] moves = new int[SNAPSHOT_INTERVAL];
+    private final byte[][] snapshots = new byte[CAPACITY / SNAPSHOT_INTERVAL + 1][];
+    // the board while the snapshots are rebuilt in fold()
+    private byte[] working;
+    private int size;
+    private int position;
+
+    /**
+     * Konstruerar en tom historik som börjar från en ställning.
+     *
+     * @param start De inskrivna värdena när historiken börjar.
+     */
+    MoveHistory(byte[] start) {
+        reset(start);
+    }
+
+    /**
+     * Tömmer historiken och låter den börja från en ny ställning.
+     */
+    void reset(byte[] start) {
+        size = 0;
+        position = 0;
+        snapshots[0] = copyInto(snapshots[0], start);
+    }
+
+    /**
+     * Lägger till ett drag efter att det har gjorts.
+     *
+     * @param continues Sant om draget hör till samma åtgärd som föregående drag.
+     * @param board De inskrivna värdena efter draget.
+     */
+    void record(int cell, int from, int to, boolean continues, byte[] board) {
+        size = position;
+        if (size == CAPACITY) fold();
+        if (size == moves.length) {
+            int[] grown = new int[Math.min(CAPACITY, 2 * moves.length)];
+            System.arraycopy(moves, 0, grown, 0, size);
+            moves = grown;
+        }
+        moves[size++] = cell | from << FROM_SHIFT | to << TO_SHIFT | (continues ? CONTINUES : 0);
+        position = size;
+        if (position % SNAPSHOT_INTERVAL == 0) {
+            int index = position / SNAPSHOT_INTERVAL;
+            snapshots[index] = copyInto(snapshots[index], board);
+        }
+    }
+
+    /**
+     * Viker in ungefär den äldre halvan av loggen i en ny första ögonblicksbild. Vikningen
+     * sker där en åtgärd börjar, så att en åtgärd som rensa allt aldrig delas, och bilderna
+     * efter den byggs om genom att dragen spelas upp. Byte-arrayerna återanvänds.
+     */
+    private void fold() {
+        int fold = FOLD;
+        while (fold > 0 && (moves[fold] & CONTINUES) != 0) fold--;
+        if (fold == 0) {
+            // the first action is longer than half the log, so all of it is folded
+            fold = FOLD;
+            while (fold < size && (moves[fold] & CONTINUES) != 0) fold++;
+        }
+        int base = fold / SNAPSHOT_INTERVAL * SNAPSHOT_INTERVAL;
+        working = copyInto(working, snapshots[base / SNAPSHOT_INTERVAL]);
+        for (int i = base; i < fold; i++) working[cell(moves[i])] = (byte) to(moves[i]);
+
+        System.arraycopy(moves, fold, moves, 0, size - fold);
+        size -= fold;
+        position -= fold;
+        moves[0] &= ~CONTINUES;
+        snapshots[0] = copyInto(snapshots[0], working);
+        for (int i = 0; i < size; i++) {
+            working[cell(moves[i])] = (byte) to(moves[i]);
+            if ((i + 1) % SNAPSHOT_INTERVAL == 0) {
+                int index = (i + 1) / SNAPSHOT_INTERVAL;
+                snapshots[index] = copyInto(snapshots[index], working);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int position() {
+        return position;
+    }
+
+    boolean canUndo() {
+        return position > 0;
+    }
+
+    boolean canRedo() {
+        return position < size;
+    }
+
+    /**
+     * Flyttar positionen ett drag bakåt.
+     *
+     * @return Draget som ska göras ogjort.
+     */
+    int stepBack() {
+        return moves[--position];
+    }
+
+    /**
+     * Flyttar positionen ett drag framåt.
+     *
+     * @return Draget som ska göras om.
+     */
+    int stepForward() {
+        return moves[position++];
+    }
+
+    /**
+     * Kontrollerar om draget vid positionen hör till samma åtgärd som draget före det.
+     */
+    boolean continuesAt(int index) {
+        return index > 0 && index < size && (moves[index] & CONTINUES) != 0;
+    }
+
+    /**
+     * Returnerar den senaste ögonblicksbilden vid eller före en position och flyttar dit.
+     *
+     * @return De inskrivna värdena vid positionen {@code target / SNAPSHOT_INTERVAL * SNAPSHOT_INTERVAL}.
+     */
+    byte[] seekSnapshot(int target) {
+        position = target / SNAPSHOT_INTERVAL * SNAPSHOT_INTERVAL;
+        return snapshots[target / SNAPSHOT_INTERVAL];
+    }
+
+    static int cell(int move) {
+        return move & CELL_MASK;
+    }
+
+    static int from(int move) {
+        return (move >>> FROM_SHIFT) & DIGIT_MASK;
+    }
+
+    static int to(int move) {
+        return (move >>> TO_SHIFT) & DIGIT_MASK;
+    }
+
+    private static byte[] copyInto(byte[] target, byte[] source) {
+        if (target == null || target.length != source.length) return source.clone();
+        System.arraycopy(source, 0, target, 0, source.length);
+        return target;
+    }
+}
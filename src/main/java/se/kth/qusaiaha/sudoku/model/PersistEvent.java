@@ -0,0 +1,37 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * En händelse för JDK Flight Recorder när ett spel har sparats eller laddats av
+ * {@link SudokuIO}, eller när {@link GameJournal} har skrivit till disken.
+ */
+@Name("se.kth.qusaiaha.sudoku.Persist")
+@Label("Game Persistence")
+@Category({"Sudoku", "Model"})
+@Description("A game was saved, loaded or journaled")
+/*package private*/
+final class PersistEvent extends Event {
+    static final String SAVE = "save";
+    static final String LOAD = "load";
+    static final String JOURNAL = "journal";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Path")
+    String path;
+
+    @Label("Level")
+    String level;
+
+    @Label("Bytes")
+    @Description("Bytes written, or read for a load")
+    @DataAmount
+    long bytes;
+}
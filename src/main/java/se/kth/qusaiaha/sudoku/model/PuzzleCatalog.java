@@ -0,0 +1,286 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+
+/**
+ * En pusselkatalog i en minnesmappad fil med poster av fast bredd.
+ * Pussel nummer k ligger på en känd position, så det kan läsas direkt ur
+ * filen utan att något tolkas eller kopieras till heapen i förväg.
+ * <pre>
+ * huvud (32 byte): magic "SDKC", version, rutnätsstorlek, postbredd, antal poster
+ * post  (72 byte): id (long), svårighetsgrad (int), mask för startvärden (2 long),
+ *                  lösningen med två siffror per byte (41 byte), utfyllnad
+ * </pre>
+ * Svårighetsgraden är poängen från {@link SudokuGrader}. I version 1 var den antalet tomma
+ * rutor, så sådana kataloger går inte att öppna och måste importeras på nytt.
+ * Läsning sker med absoluta positioner, så flera trådar kan läsa samtidigt.
+ */
+public class PuzzleCatalog implements Closeable {
+    private static final int MAGIC = 0x53444B43;
+    private static final short VERSION = 2;
+    private static final int CELLS = GRID_SIZE * GRID_SIZE;
+    private static final int HEADER_BYTES = 32;
+    private static final int COUNT_OFFSET = 12;
+    private static final int ID_OFFSET = 0;
+    private static final int DIFFICULTY_OFFSET = 8;
+    private static final int MASK_OFFSET = 12;
+    private static final int SOLUTION_OFFSET = 28;
+    /*package private*/
+    static final int RECORD_BYTES = 72;
+    private static final int RECORDS_PER_SEGMENT = 1 << 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    private PuzzleCatalog(FileChannel channel, MappedByteBuffer[] segments, long size) {
+        this.channel = channel;
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * Öppnar en befintlig katalog för läsning.
+     *
+     * @param file Katalogfilen.
+     * @return Den öppnade katalogen.
+     * @throws IOException Om filen inte kan läsas eller inte är en katalog.
+     */
+    public static PuzzleCatalog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = readHeader(channel);
+            if (channel.size() < HEADER_BYTES + size * RECORD_BYTES) throw new EOFException("truncated catalog " + file);
+            int segmentCount = (int) ((size + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int segment = 0; segment < segmentCount; segment++) {
+                long first = (long) segment * RECORDS_PER_SEGMENT;
+                long records = Math.min(RECORDS_PER_SEGMENT, size - first);
+                segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + first * RECORD_BYTES, records * RECORD_BYTES);
+            }
+            return new PuzzleCatalog(channel, segments, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Öppnar en katalog för att lägga till pussel. Filen skapas om den inte finns.
+     *
+     * @param file Katalogfilen.
+     * @return En skrivare som lägger till poster i slutet av katalogen.
+     * @throws IOException Om filen inte kan öppnas eller inte är en katalog.
+     */
+    public static Writer append(Path file) throws IOException {
+        return new Writer(file);
+    }
+
+    /**
+     * Returnerar antalet pussel i katalogen.
+     *
+     * @return Antalet poster.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returnerar id för ett pussel.
+     *
+     * @param index Pusslets position i katalogen.
+     * @return Pusslets id.
+     */
+    public long getId(long index) {
+        return segment(index).getLong(offset(index) + ID_OFFSET);
+    }
+
+    /**
+     * Returnerar svårighetsgraden för ett pussel.
+     *
+     * @param index Pusslets position i katalogen.
+     * @return Pusslets poäng från {@link SudokuGrader}.
+     */
+    public int getDifficulty(long index) {
+        return segment(index).getInt(offset(index) + DIFFICULTY_OFFSET);
+    }
+
+    /**
+     * Läser ett pussel till två platta arrayer utan att allokera något.
+     *
+     * @param index Pusslets position i katalogen.
+     * @param givens Array med 81 rutor som får startvärdena, noll för en tom ruta.
+     * @param solution Array med 81 rutor som får lösningen.
+     */
+    public void read(long index, int[] givens, int[] solution) {
+        MappedByteBuffer segment = segment(index);
+        int offset = offset(index);
+        long maskLow = segment.getLong(offset + MASK_OFFSET);
+        long maskHigh = segment.getLong(offset + MASK_OFFSET + 8);
+        for (int cell = 0; cell < CELLS; cell += 2) {
+            int packed = segment.get(offset + SOLUTION_OFFSET + cell / 2) & 0xFF;
+            solution[cell] = packed >>> 4;
+            if (cell + 1 < CELLS) solution[cell + 1] = packed & 0x0F;
+        }
+        for (int cell = 0; cell < CELLS; cell++) {
+            long mask = cell < 64 ? maskLow >>> cell : maskHigh >>> (cell - 64);
+            givens[cell] = (mask & 1) != 0 ? solution[cell] : 0;
+        }
+    }
+
+    /**
+     * Läser ett pussel i samma layout som {@link SudokuUtilities#generateSudokuMatrix(SudokuLevel)}
+     * returnerar, så att det kan skickas direkt till {@link Boxes}.
+     *
+     * @param index Pusslets position i katalogen.
+     * @return En matris där [row][col][0] är startvärdena och [row][col][1] lösningen.
+     */
+    public int[][][] getSudokuMatrix(long index) {
+        int[] givens = new int[CELLS];
+        int[] solution = new int[CELLS];
+        read(index, givens, solution);
+        int[][][] sudokuMatrix = new int[GRID_SIZE][GRID_SIZE][2];
+        for (int cell = 0; cell < CELLS; cell++) {
+            sudokuMatrix[cell / GRID_SIZE][cell % GRID_SIZE][0] = givens[cell];
+            sudokuMatrix[cell / GRID_SIZE][cell % GRID_SIZE][1] = solution[cell];
+        }
+        return sudokuMatrix;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer segment(long index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("puzzle " + index + " of " + size);
+        return segments[(int) (index / RECORDS_PER_SEGMENT)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index % RECORDS_PER_SEGMENT) * RECORD_BYTES;
+    }
+
+    private static long readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) throw new EOFException("truncated catalog header");
+        }
+        if (header.getInt(0) != MAGIC) throw new StreamCorruptedException("not a puzzle catalog");
+        if (header.getShort(4) != VERSION) throw new StreamCorruptedException("unsupported catalog version " + header.getShort(4));
+        if (header.getShort(6) != GRID_SIZE) throw new StreamCorruptedException("grid size " + header.getShort(6));
+        if (header.getInt(8) != RECORD_BYTES) throw new StreamCorruptedException("record size " + header.getInt(8));
+        long count = header.getLong(COUNT_OFFSET);
+        if (count < 0) throw new StreamCorruptedException("record count " + count);
+        return count;
+    }
+
+    private static ByteBuffer newHeader(long count) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) GRID_SIZE).putInt(RECORD_BYTES).putLong(count);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * Lägger till poster i slutet av en katalog genom en buffrad FileChannel.
+     * Antalet poster i huvudet uppdateras när skrivaren stängs. En skrivare är inte trådsäker.
+     */
+    public static class Writer implements Closeable {
+        private static final int RECORDS_PER_BUFFER = 1024;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(RECORDS_PER_BUFFER * RECORD_BYTES);
+        private long count;
+
+        private Writer(Path file) throws IOException {
+            boolean exists = Files.exists(file) && Files.size(file) > 0;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (exists) {
+                    this.count = readHeader(channel);
+                } else {
+                    ByteBuffer header = newHeader(0);
+                    while (header.hasRemaining()) channel.write(header, header.position());
+                }
+                channel.position(HEADER_BYTES + count * RECORD_BYTES);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Lägger till ett pussel.
+         *
+         * @param id Pusslets id.
+         * @param difficulty Pusslets poäng från {@link SudokuGrader}.
+         * @param givens Startvärdena i radordning, noll för en tom ruta.
+         * @param solution Lösningen i radordning.
+         * @return Pusslets position i katalogen.
+         * @throws IOException Om posten inte kan skrivas.
+         */
+        public long append(long id, int difficulty, int[] givens, int[] solution) throws IOException {
+            if (buffer.remaining() < RECORD_BYTES) flush();
+            long maskLow = 0;
+            long maskHigh = 0;
+            for (int cell = 0; cell < CELLS; cell++) {
+                if (givens[cell] == 0) continue;
+                if (cell < 64) maskLow |= 1L << cell;
+                else maskHigh |= 1L << (cell - 64);
+            }
+            int start = buffer.position();
+            buffer.putLong(id).putInt(difficulty).putLong(maskLow).putLong(maskHigh);
+            for (int cell = 0; cell < CELLS; cell += 2) {
+                int low = cell + 1 < CELLS ? solution[cell + 1] : 0;
+                buffer.put((byte) (solution[cell] << 4 | low));
+            }
+            while (buffer.position() < start + RECORD_BYTES) buffer.put((byte) 0);
+            return count++;
+        }
+
+        /**
+         * Returnerar antalet poster i katalogen inklusive de som ännu inte har skrivits ut.
+         *
+         * @return Antalet poster.
+         */
+        public long size() {
+            return count;
+        }
+
+        /**
+         * Skriver ut buffrade poster och uppdaterar antalet i huvudet.
+         *
+         * @throws IOException Om filen inte kan skrivas.
+         */
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+            ByteBuffer header = newHeader(count);
+            while (header.hasRemaining()) channel.write(header, header.position());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
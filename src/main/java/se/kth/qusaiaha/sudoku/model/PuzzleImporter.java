@@ -0,0 +1,298 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+
+/**
+ * Importerar pussel från textfiler med ett pussel per rad till en {@link PuzzleCatalog}.
+ * En rad innehåller 81 tecken med '0' eller '.' för tomma rutor, eventuellt följda av
+ * 81 tecken med lösningen. Kommatecken, semikolon och blanksteg ignoreras, så både
+ * sdm-filer och csv-filer av typen {@code quizzes,solutions} kan läsas. Rader som börjar
+ * med '#' och en rubrikrad först i filen hoppas över.
+ * <p>
+ * Filen läses bitvis genom en ByteBuffer och avkodas byte för byte, så inga strängar skapas
+ * per pussel. Avkodade pussel samlas i satser som kontrolleras parallellt med
+ * {@link DancingLinks}; bara pussel med exakt en lösning skrivs till katalogen. Samma
+ * arbetare betygsätter pusslen med {@link SudokuGrader}, och poängen sparas som
+ * pusslets svårighetsgrad i katalogen. Ett pussels id är dess position i katalogen, så
+ * det är unikt även när flera filer importeras till samma katalog.
+ */
+public class PuzzleImporter {
+    private static final int CELLS = GRID_SIZE * GRID_SIZE;
+    private static final int BATCH_SIZE = 4096;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private static final byte VALID = 0;
+    private static final byte NO_SOLUTION = 1;
+    private static final byte MULTIPLE_SOLUTIONS = 2;
+    private static final byte WRONG_SOLUTION = 3;
+
+    private final int threads;
+    private final ForkJoinPool pool;
+    private final DancingLinks[] validators;
+    private final SudokuGrader[] graders;
+    private final int[][] scratch;
+    private int errorLimit = 1000;
+
+    private final int[] givens = new int[BATCH_SIZE * CELLS];
+    private final int[] solutions = new int[BATCH_SIZE * CELLS];
+    private final boolean[] hasSolution = new boolean[BATCH_SIZE];
+    private final long[] lineNumbers = new long[BATCH_SIZE];
+    private final byte[] results = new byte[BATCH_SIZE];
+    private final int[] difficulties = new int[BATCH_SIZE];
+    private final int[] puzzleGivens = new int[CELLS];
+    private final int[] puzzleSolution = new int[CELLS];
+
+    /**
+     * Konstruerar en importör som kontrollerar pussel med ett givet antal trådar.
+     *
+     * @param threads Antalet trådar som kontrollerar pussel.
+     */
+    public PuzzleImporter(int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("threads " + threads);
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+        this.validators = new DancingLinks[threads];
+        this.graders = new SudokuGrader[threads];
+        this.scratch = new int[threads][CELLS];
+        for (int i = 0; i < threads; i++) {
+            validators[i] = new DancingLinks();
+            graders[i] = new SudokuGrader();
+        }
+    }
+
+    /**
+     * Sätter hur många fel som sparas i rapporten. Fler fel räknas men sparas inte.
+     *
+     * @param errorLimit Högsta antalet felmeddelanden i rapporten.
+     */
+    public void setErrorLimit(int errorLimit) {
+        this.errorLimit = errorLimit;
+    }
+
+    /**
+     * Importerar alla pussel i en fil till en katalog.
+     *
+     * @param source Textfilen som läses.
+     * @param catalog Katalogen som giltiga pussel läggs till i.
+     * @return En rapport med antalet importerade och avvisade pussel och felen med radnummer.
+     * @throws IOException Om filen inte kan läsas eller katalogen inte kan skrivas.
+     */
+    public Report importFile(Path source, PuzzleCatalog.Writer catalog) throws IOException {
+        Report report = new Report();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        byte[] bytes = buffer.array();
+
+        long line = 1;
+        int cells = 0;
+        int batch = 0;
+        boolean skipLine = false;
+        boolean badLine = false;
+        byte badByte = 0;
+
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                endOfFile = read < 0;
+                if (endOfFile && cells == 0 && !skipLine && !badLine) break;
+                int length = endOfFile ? 1 : read;
+                for (int i = 0; i < length; i++) {
+                    byte ch = endOfFile ? (byte) '\n' : bytes[i];
+                    if (ch == '\n') {
+                        if (badLine) {
+                            if (line == 1 && cells == 0) {
+                                report.headerSkipped = true;
+                            } else {
+                                report.reject(line, "unexpected character '" + (char) (badByte & 0xFF) + "'", errorLimit);
+                            }
+                        } else if (!skipLine && cells != 0) {
+                            if (cells == CELLS || cells == 2 * CELLS) {
+                                hasSolution[batch] = cells == 2 * CELLS;
+                                lineNumbers[batch] = line;
+                                if (++batch == BATCH_SIZE) {
+                                    flushBatch(batch, catalog, report);
+                                    batch = 0;
+                                }
+                            } else {
+                                report.reject(line, "expected " + CELLS + " or " + 2 * CELLS + " cells, found " + cells, errorLimit);
+                            }
+                        }
+                        line++;
+                        cells = 0;
+                        skipLine = false;
+                        badLine = false;
+                        continue;
+                    }
+                    if (skipLine || badLine) continue;
+                    if (ch == '#' && cells == 0) {
+                        skipLine = true;
+                        continue;
+                    }
+                    if (ch == ',' || ch == ';' || ch == ' ' || ch == '\t' || ch == '\r') continue;
+                    int value = SudokuUtilities.convertByteToSudokuInt(ch);
+                    if (value < 0) {
+                        badLine = true;
+                        badByte = ch;
+                    } else if (cells < CELLS) {
+                        givens[batch * CELLS + cells++] = value;
+                    } else if (cells < 2 * CELLS) {
+                        solutions[batch * CELLS + cells++ - CELLS] = value;
+                    } else {
+                        cells++;
+                    }
+                }
+            }
+        }
+        if (batch > 0) flushBatch(batch, catalog, report);
+        report.lines = line - 1;
+        return report;
+    }
+
+    /**
+     * Stänger trådarna som kontrollerar pussel.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private void flushBatch(int batch, PuzzleCatalog.Writer catalog, Report report) throws IOException {
+        List<Future<?>> tasks = new ArrayList<>(threads);
+        for (int worker = 0; worker < threads; worker++) {
+            int first = batch * worker / threads;
+            int last = batch * (worker + 1) / threads;
+            DancingLinks validator = validators[worker];
+            SudokuGrader grader = graders[worker];
+            int[] found = scratch[worker];
+            tasks.add(pool.submit(() -> validate(validator, grader, found, first, last)));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("import interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("puzzle validation failed", e.getCause());
+            }
+        }
+
+        for (int i = 0; i < batch; i++) {
+            switch (results[i]) {
+                case VALID:
+                    System.arraycopy(givens, i * CELLS, puzzleGivens, 0, CELLS);
+                    System.arraycopy(solutions, i * CELLS, puzzleSolution, 0, CELLS);
+                    // line numbers restart in every file, so the position in the catalogue is the id
+                    catalog.append(catalog.size(), difficulties[i], puzzleGivens, puzzleSolution);
+                    report.imported++;
+                    break;
+                case NO_SOLUTION:
+                    report.reject(lineNumbers[i], "puzzle has no solution", errorLimit);
+                    break;
+                case MULTIPLE_SOLUTIONS:
+                    report.reject(lineNumbers[i], "puzzle has more than one solution", errorLimit);
+                    break;
+                default:
+                    report.reject(lineNumbers[i], "solution does not match the puzzle", errorLimit);
+            }
+        }
+    }
+
+    private void validate(DancingLinks validator, SudokuGrader grader, int[] found, int first, int last) {
+        for (int i = first; i < last; i++) {
+            int offset = i * CELLS;
+            System.arraycopy(givens, offset, found, 0, CELLS);
+            int count = validator.countSolutions(found, 2);
+            if (count == 0) {
+                results[i] = NO_SOLUTION;
+            } else if (count > 1) {
+                results[i] = MULTIPLE_SOLUTIONS;
+            } else {
+                validator.getSolution(found);
+                if (hasSolution[i] && !matches(found, offset)) {
+                    results[i] = WRONG_SOLUTION;
+                } else {
+                    System.arraycopy(found, 0, solutions, offset, CELLS);
+                    System.arraycopy(givens, offset, found, 0, CELLS);
+                    difficulties[i] = grader.grade(found);
+                    results[i] = VALID;
+                }
+            }
+        }
+    }
+
+    private boolean matches(int[] found, int offset) {
+        for (int cell = 0; cell < CELLS; cell++) {
+            if (found[cell] != solutions[offset + cell]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Resultatet av en import.
+     */
+    public static class Report {
+        private long lines;
+        private long imported;
+        private long rejected;
+        private boolean headerSkipped;
+        private final List<String> errors = new ArrayList<>();
+
+        private void reject(long line, String message, int errorLimit) {
+            rejected++;
+            if (errors.size() < errorLimit) errors.add("line " + line + ": " + message);
+        }
+
+        /**
+         * @return Antalet lästa rader.
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * @return Antalet pussel som lades till i katalogen.
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * @return Antalet rader som avvisades.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return Sant om första raden hoppades över som rubrik.
+         */
+        public boolean isHeaderSkipped() {
+            return headerSkipped;
+        }
+
+        /**
+         * @return Felmeddelanden med radnummer, högst så många som felgränsen tillåter.
+         */
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        @Override
+        public String toString() {
+            return "lines " + lines + ", imported " + imported + ", rejected " + rejected;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * En begränsad förrådskö med färdiggenererade pussel per svårighetsnivå.
+ * En bakgrundstråd fyller på köerna, så att ett nytt spel kan hämta ett pussel direkt
+ * utan att generera det på JavaFX-tråden. Är kön tom genereras pusslet i den anropande
+ * tråden och räknas som en miss.
+ * <p>
+ * Träffar och missar räknas i {@link Metrics} som {@code pool.hits} och {@code pool.misses},
+ * och tiden för varje påfyllning som {@code pool.refill}.
+ */
+public class PuzzlePool {
+    private static final LongAdder HITS = Metrics.counter("pool.hits");
+    private static final LongAdder MISSES = Metrics.counter("pool.misses");
+    private static final LatencyHistogram REFILL_TIME = Metrics.histogram("pool.refill");
+
+    private final int capacity;
+    private final Map<SudokuLevel, BlockingQueue<int[][][]>> ready = new EnumMap<>(SudokuLevel.class);
+    private final Map<SudokuLevel, AtomicBoolean> refilling = new EnumMap<>(SudokuLevel.class);
+    private final ExecutorService refiller;
+    private final SudokuGenerator generator;
+
+    /**
+     * Konstruerar en pool och börjar fylla den i bakgrunden.
+     *
+     * @param capacity Högsta antalet färdiga pussel per svårighetsnivå.
+     */
+    public PuzzlePool(int capacity) {
+        this(capacity, new SudokuGenerator());
+    }
+
+    /**
+     * Konstruerar en pool som fyller på med en given generator.
+     *
+     * @param capacity Högsta antalet färdiga pussel per svårighetsnivå.
+     * @param generator Generatorn som bakgrundstråden använder.
+     */
+    public PuzzlePool(int capacity, SudokuGenerator generator) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity " + capacity);
+        this.capacity = capacity;
+        this.generator = generator;
+        this.refiller = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "puzzle-pool-refill");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        for (SudokuLevel level : SudokuLevel.values()) {
+            ready.put(level, new ArrayBlockingQueue<>(capacity));
+            refilling.put(level, new AtomicBoolean());
+            scheduleRefill(level);
+        }
+    }
+
+    /**
+     * Hämtar ett färdigt pussel och beställer påfyllning i bakgrunden.
+     *
+     * @param level Svårighetsnivån för pusslet.
+     * @return En matris där [row][col][0] är startvärdena och [row][col][1] lösningen.
+     */
+    public int[][][] take(SudokuLevel level) {
+        int[][][] sudokuMatrix = ready.get(level).poll();
+        if (sudokuMatrix != null) {
+            HITS.increment();
+        } else {
+            MISSES.increment();
+            sudokuMatrix = SudokuUtilities.generateSudokuMatrix(level);
+        }
+        scheduleRefill(level);
+        return sudokuMatrix;
+    }
+
+    /**
+     * Returnerar antalet färdiga pussel för en svårighetsnivå.
+     *
+     * @param level Svårighetsnivån.
+     * @return Antalet pussel som kan hämtas direkt.
+     */
+    public int available(SudokuLevel level) {
+        return ready.get(level).size();
+    }
+
+    /**
+     * Stoppar bakgrundstråden. Pussel som redan ligger i poolen kan fortfarande hämtas.
+     */
+    public void shutdown() {
+        refiller.shutdownNow();
+    }
+
+    private void scheduleRefill(SudokuLevel level) {
+        if (refilling.get(level).compareAndSet(false, true)) {
+            try {
+                refiller.execute(() -> refill(level));
+            } catch (RejectedExecutionException e) {
+                // the pool has been shut down
+                refilling.get(level).set(false);
+            }
+        }
+    }
+
+    private void refill(SudokuLevel level) {
+        BlockingQueue<int[][][]> queue = ready.get(level);
+        try {
+            while (queue.size() < capacity && !Thread.currentThread().isInterrupted()) {
+                long start = System.nanoTime();
+                int[][][] sudokuMatrix = generator.generate(level);
+                REFILL_TIME.recordSince(start);
+                if (!queue.offer(sudokuMatrix)) break;
+            }
+        } finally {
+            refilling.get(level).set(false);
+        }
+        // a take between the last size check and clearing the flag could not schedule a refill
+        if (queue.size() < capacity && !Thread.currentThread().isInterrupted()) scheduleRefill(level);
+    }
+}
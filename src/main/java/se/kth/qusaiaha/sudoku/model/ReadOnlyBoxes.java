@@ -0,0 +1,125 @@
+package se.kth.qusaiaha.sudoku.model;
+
+/**
+ * En läsvy av Sudoku-brädet. Vyer och andra som bara läser brädet använder detta
+ * gränssnitt i stället för att kopiera rutorna.
+ */
+public interface ReadOnlyBoxes {
+
+    /**
+     * Returnerar spelets svårighetsnivå.
+     *
+     * @return Svårighetsnivån för det pågående spelet.
+     */
+    SudokuLevel getLevel();
+
+    /**
+     * Returnerar antalet kvarvarande rutor att fylla i.
+     *
+     * @return Antalet kvarvarande rutor att fylla i.
+     */
+    int boxesLeftToEnter();
+
+    /**
+     * Returnerar brädets storlek.
+     *
+     * @return Antalet rutor per rad, och antalet siffror.
+     */
+    int getSize();
+
+    /**
+     * Returnerar storleken på ett block.
+     *
+     * @return Antalet rutor per rad i ett block, roten ur {@link #getSize()}.
+     */
+    int getSectionSize();
+
+    /**
+     * Hämtar värdet som ska fyllas i en ruta.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     * @return Värdet som ska fyllas i rutan.
+     */
+    int getToEnter(int row, int col);
+
+    /**
+     * Hämtar det inskrivna värdet i en ruta.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     * @return Det inskrivna värdet i rutan, noll om rutan är tom.
+     */
+    int getEntered(int row, int col);
+
+    /**
+     * Hämtar tillståndet för en ruta.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     * @return Tillståndet för rutan.
+     */
+    StateOfBox getState(int row, int col);
+
+    /**
+     * Kontrollerar om siffran i en ruta krockar med samma siffra i en annan ruta i samma
+     * rad, kolumn eller block. Tar konstant tid.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     * @return Sant om rutan har en siffra som redan finns bland dess grannar, falskt om
+     *         rutan är tom eller inte krockar.
+     */
+    boolean isConflicting(int row, int col);
+
+    /**
+     * Kontrollerar om en siffra skulle krocka med en annan ruta i samma rad, kolumn eller
+     * block om den skrevs in i en ruta. Tar konstant tid.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     * @param digit Siffran som ska prövas.
+     * @return Sant om siffran redan finns bland rutans grannar.
+     */
+    boolean wouldConflict(int row, int col, int digit);
+
+    /**
+     * Returnerar kandidaterna för en ruta, de siffror som inte redan finns i rutans rad,
+     * kolumn eller block. Tar konstant tid.
+     *
+     * @param row Radnummer.
+     * @param col Kolumnnummer.
+     * @return En mask där bit d-1 är satt om siffran d är en kandidat, noll om rutan är ifylld.
+     */
+    long getCandidates(int row, int col);
+
+    /**
+     * Returnerar antalet krockar på brädet, räknat som antalet par av enhet och siffra där
+     * siffran finns mer än en gång.
+     *
+     * @return Antalet krockar, noll om inga regler är brutna.
+     */
+    int getConflictCount();
+
+    /**
+     * Kontrollerar om spelet är vunnet, det vill säga om alla rutor är ifyllda och ingen
+     * rad, kolumn eller block innehåller samma siffra två gånger. Tar konstant tid.
+     *
+     * @return Sant om spelet är vunnet.
+     */
+    boolean isSolved();
+
+    /**
+     * Registrerar en lyssnare som får veta när rutor ändras.
+     *
+     * @param listener Lyssnaren som ska läggas till.
+     */
+    void addListener(BoxesListener listener);
+
+    /**
+     * Tar bort en tidigare registrerad lyssnare.
+     *
+     * @param listener Lyssnaren som ska tas bort.
+     */
+    void removeListener(BoxesListener listener);
+}
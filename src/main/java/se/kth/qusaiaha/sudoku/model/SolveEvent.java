@@ -0,0 +1,31 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * En händelse för JDK Flight Recorder när {@link SudokuSolver} har löst, eller misslyckats
+ * med att lösa, ett pussel. Generatorns unikhetskontroller ger inga händelser.
+ */
+@Name("se.kth.qusaiaha.sudoku.Solve")
+@Label("Puzzle Solve")
+@Category({"Sudoku", "Model"})
+@Description("A puzzle was solved by backtracking search")
+/*package private*/
+final class SolveEvent extends Event {
+    @Label("Size")
+    @Description("Cells per row")
+    int size;
+
+    @Label("Givens")
+    int givens;
+
+    @Label("Search Nodes")
+    long nodes;
+
+    @Label("Solved")
+    boolean solved;
+}
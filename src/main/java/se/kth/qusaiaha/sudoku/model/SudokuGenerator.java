@@ -0,0 +1,272 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+
+/**
+ * Genererar nya Sudoku-pussel med exakt en lösning.
+ * För 9x9-bräden fylls först de tre diagonala blocken slumpmässigt och resten
+ * av brädet löses fram. Andra storlekar utgår från ett mönster som blandas genom att
+ * byta plats på rader inom band, band, kolumner inom staplar, staplar och siffror.
+ * Sedan tas ledtrådar bort i slumpmässig ordning så länge lösningen förblir unik
+ * och antalet ledtrådar ligger över målet för svårighetsnivån.
+ * Med samma frö ger generatorn samma följd av pussel. En instans är inte trådsäker.
+ */
+public class SudokuGenerator {
+    /**
+     * Hur många söknoder en unikhetskontroll får använda på bräden större än 9x9. En ruta vars
+     * borttagning inte hinner bevisas unik behålls som ledtråd, så genereringstiden är
+     * begränsad även om pusslet då kan få fler ledtrådar än målet.
+     */
+    private static final long LARGE_BOARD_NODE_LIMIT = 64;
+    private static final LatencyHistogram GENERATE_TIME = Metrics.histogram("model.generate");
+
+    private final Random random;
+    private final SudokuGeometry geometry;
+    private final int size;
+    private final int cells;
+    private final SudokuSolver solver;
+    private final DancingLinks dancingLinks;
+    private final int[] order;
+    private final int[] digits;
+    private final int[] rowOrder;
+    private final int[] colOrder;
+    private final int[] givens;
+    private final int[] solution;
+
+    /**
+     * Konstruerar en generator med ett slumpmässigt frö.
+     */
+    public SudokuGenerator() {
+        this(new Random());
+    }
+
+    /**
+     * Konstruerar en generator med ett givet frö så att resultatet kan återskapas.
+     *
+     * @param seed Fröet till slumpgeneratorn.
+     */
+    public SudokuGenerator(long seed) {
+        this(new Random(seed));
+    }
+
+    /**
+     * Konstruerar en generator som använder en given slumpgenerator.
+     *
+     * @param random Slumpgeneratorn som generatorn drar från.
+     */
+    public SudokuGenerator(Random random) {
+        this(GRID_SIZE, random);
+    }
+
+    /**
+     * Konstruerar en generator för bräden med en given storlek och ett slumpmässigt frö.
+     *
+     * @param size Antalet rutor per rad, till exempel 4, 9, 16 eller 25.
+     * @throws IllegalArgumentException Om storleken inte stöds.
+     */
+    public SudokuGenerator(int size) {
+        this(size, new Random());
+    }
+
+    /**
+     * Konstruerar en generator för bräden med en given storlek.
+     *
+     * @param size Antalet rutor per rad, till exempel 4, 9, 16 eller 25.
+     * @param random Slumpgeneratorn som generatorn drar från.
+     * @throws IllegalArgumentException Om storleken inte stöds.
+     */
+    public SudokuGenerator(int size, Random random) {
+        this.random = random;
+        this.geometry = SudokuGeometry.of(size);
+        this.size = size;
+        this.cells = geometry.cells;
+        this.solver = new SudokuSolver(size);
+        this.dancingLinks = new DancingLinks(size);
+        if (size > GRID_SIZE) solver.setNodeLimit(LARGE_BOARD_NODE_LIMIT);
+        this.order = new int[cells];
+        this.digits = new int[size];
+        this.rowOrder = new int[size];
+        this.colOrder = new int[size];
+        this.givens = new int[cells];
+        this.solution = new int[cells];
+        for (int cell = 0; cell < cells; cell++) order[cell] = cell;
+    }
+
+    /**
+     * Returnerar storleken på brädena som generatorn skapar.
+     *
+     * @return Antalet rutor per rad.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Genererar ett nytt pussel i samma layout som
+     * {@link SudokuUtilities#generateSudokuMatrix(SudokuLevel)} returnerar.
+     *
+     * @param level Svårighetsnivån för pusslet.
+     * @return En matris där [row][col][0] är startvärdena och [row][col][1] lösningen.
+     */
+    public int[][][] generate(SudokuLevel level) {
+        generate(level, givens, solution);
+        int[][][] sudokuMatrix = new int[size][size][2];
+        for (int cell = 0; cell < cells; cell++) {
+            sudokuMatrix[geometry.rowOf[cell]][geometry.colOf[cell]][0] = givens[cell];
+            sudokuMatrix[geometry.rowOf[cell]][geometry.colOf[cell]][1] = solution[cell];
+        }
+        SudokuUtilities.applyVariations(sudokuMatrix, random);
+        return sudokuMatrix;
+    }
+
+    /**
+     * Genererar ett nytt pussel i två platta arrayer utan att allokera något.
+     *
+     * @param level Svårighetsnivån för pusslet.
+     * @param givensOut Array med alla rutor som får startvärdena, noll för en tom ruta.
+     * @param solutionOut Array med alla rutor som får lösningen.
+     * @return Antalet ledtrådar i pusslet.
+     */
+    public int generate(SudokuLevel level, int[] givensOut, int[] solutionOut) {
+        long start = System.nanoTime();
+        GenerateEvent event = new GenerateEvent();
+        event.begin();
+        if (size == GRID_SIZE) {
+            fillSolution(solutionOut);
+        } else {
+            fillFromPattern(solutionOut);
+        }
+        System.arraycopy(solutionOut, 0, givensOut, 0, cells);
+        int clues = removeClues(givensOut, targetClues(level, size));
+        GENERATE_TIME.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.level = level.name();
+            event.size = size;
+            event.clues = clues;
+            event.commit();
+        }
+        return clues;
+    }
+
+    /**
+     * Returnerar antalet ledtrådar som generatorn siktar på för en svårighetsnivå.
+     *
+     * @param level Svårighetsnivån.
+     * @return Målet för antalet ledtrådar.
+     */
+    public static int targetClues(SudokuLevel level) {
+        switch (level) {
+            case EASY: return 38;
+            case HARD: return 24;
+            case MEDIUM:
+            default: return 30;
+        }
+    }
+
+    /**
+     * Returnerar antalet ledtrådar som generatorn siktar på för en svårighetsnivå och
+     * brädstorlek, i samma andel av rutorna som för ett 9x9-bräde.
+     *
+     * @param level Svårighetsnivån.
+     * @param size Antalet rutor per rad.
+     * @return Målet för antalet ledtrådar.
+     */
+    public static int targetClues(SudokuLevel level, int size) {
+        if (size == GRID_SIZE) return targetClues(level);
+        return (int) Math.round((double) targetClues(level) * size * size / (GRID_SIZE * GRID_SIZE));
+    }
+
+    private void fillSolution(int[] grid) {
+        Arrays.fill(grid, 0);
+        int sectionSize = geometry.sectionSize;
+        for (int section = 0; section < sectionSize; section++) {
+            shuffle(digits, size, true);
+            int top = section * sectionSize;
+            for (int i = 0; i < size; i++) {
+                int row = top + i / sectionSize;
+                int col = top + i % sectionSize;
+                grid[row * size + col] = digits[i];
+            }
+        }
+        if (!solver.solve(grid)) throw new IllegalStateException("diagonal sections must always be solvable");
+    }
+
+    /**
+     * Fyller en lösning från mönstret (n * (rad % n) + rad / n + kolumn) % storlek, där n är
+     * blockets sida, och blandar den med byten som alltid ger en giltig lösning.
+     * Stora tomma bräden är för dyra att lösa fram med sökning, och på 4x4 går
+     * slumpmässiga diagonala block inte alltid att lösa.
+     */
+    private void fillFromPattern(int[] grid) {
+        shuffleLines(rowOrder);
+        shuffleLines(colOrder);
+        shuffle(digits, size, true);
+        int sectionSize = geometry.sectionSize;
+        for (int row = 0; row < size; row++) {
+            int patternRow = rowOrder[row];
+            for (int col = 0; col < size; col++) {
+                int pattern = (sectionSize * (patternRow % sectionSize) + patternRow / sectionSize + colOrder[col]) % size;
+                grid[row * size + col] = digits[pattern];
+            }
+        }
+    }
+
+    /**
+     * Blandar ordningen på banden (eller staplarna) och på raderna inom varje band.
+     */
+    private void shuffleLines(int[] lines) {
+        int sectionSize = geometry.sectionSize;
+        shuffle(digits, sectionSize, true);
+        for (int band = 0; band < sectionSize; band++) {
+            for (int i = 0; i < sectionSize; i++) lines[band * sectionSize + i] = (digits[band] - 1) * sectionSize + i;
+            for (int i = sectionSize - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = lines[band * sectionSize + i];
+                lines[band * sectionSize + i] = lines[band * sectionSize + j];
+                lines[band * sectionSize + j] = tmp;
+            }
+        }
+    }
+
+    private int removeClues(int[] grid, int target) {
+        int clues = cells;
+        shuffle(order, cells, false);
+        for (int i = 0; i < cells && clues > target; i++) {
+            int cell = order[i];
+            int saved = grid[cell];
+            grid[cell] = 0;
+            if (isStillUnique(grid, cell, saved)) {
+                clues--;
+            } else {
+                grid[cell] = saved;
+            }
+        }
+        return clues;
+    }
+
+    /**
+     * Kontrollerar att pusslet fortfarande har exakt en lösning när en ledtråd har tagits bort.
+     * Stora bräden kontrolleras med lösaren, som bara behöver visa att ingen lösning har en
+     * annan siffra i rutan; Dancing Links blir för långsam när ett 25x25-bräde töms.
+     */
+    private boolean isStillUnique(int[] grid, int cell, int removed) {
+        if (size <= GRID_SIZE) return dancingLinks.hasUniqueSolution(grid);
+        return !solver.hasSolutionWithout(grid, cell, removed) && !solver.isAborted();
+    }
+
+    private void shuffle(int[] values, int length, boolean resetToDigits) {
+        if (resetToDigits) {
+            for (int i = 0; i < length; i++) values[i] = i + 1;
+        }
+        for (int i = length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
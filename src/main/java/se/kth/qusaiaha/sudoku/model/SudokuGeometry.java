@@ -0,0 +1,86 @@
+package se.kth.qusaiaha.sudoku.model;
+
+/**
+ * Uppslagstabeller för ett bräde med en viss storlek: vilken rad, kolumn och vilket block
+ * varje ruta hör till och vilka rutor varje enhet (rad, kolumn eller block) består av.
+ * Rutorna numreras i radordning. Enheterna numreras med raderna först, sedan kolumnerna
+ * och sist blocken. Siffran d motsvaras av bit d-1 i en long-mask, så brädet kan ha högst
+ * 64 siffror. Grannarna till en ruta är de andra rutorna i dess rad, kolumn och block,
+ * 20 stycken på ett 9x9-bräde. Tabellerna skapas en gång per storlek och delas mellan trådar.
+ */
+/*package private*/
+final class SudokuGeometry {
+    private static final SudokuGeometry[] BY_SECTION_SIZE =
+            new SudokuGeometry[SudokuUtilities.MAX_SECTION_SIZE + 1];
+
+    final int sectionSize;
+    final int size;
+    final int cells;
+    final int units;
+    final long allDigits;
+    final int[] rowOf;
+    final int[] colOf;
+    final int[] sectionOf;
+    final int[][] unitCells;
+    final int[][] peers;
+
+    private SudokuGeometry(int sectionSize) {
+        this.sectionSize = sectionSize;
+        this.size = sectionSize * sectionSize;
+        this.cells = size * size;
+        this.units = 3 * size;
+        this.allDigits = size == 64 ? -1L : (1L << size) - 1;
+        this.rowOf = new int[cells];
+        this.colOf = new int[cells];
+        this.sectionOf = new int[cells];
+        this.unitCells = new int[units][size];
+        for (int cell = 0; cell < cells; cell++) {
+            int row = cell / size;
+            int col = cell % size;
+            int section = (row / sectionSize) * sectionSize + col / sectionSize;
+            rowOf[cell] = row;
+            colOf[cell] = col;
+            sectionOf[cell] = section;
+            unitCells[row][col] = cell;
+            unitCells[size + col][row] = cell;
+            unitCells[2 * size + section][(row % sectionSize) * sectionSize + col % sectionSize] = cell;
+        }
+        int peerCount = 2 * (size - 1) + (sectionSize - 1) * (sectionSize - 1);
+        this.peers = new int[cells][peerCount];
+        for (int cell = 0; cell < cells; cell++) {
+            int count = 0;
+            for (int other = 0; other < cells; other++) {
+                if (other != cell && (rowOf[other] == rowOf[cell] || colOf[other] == colOf[cell]
+                        || sectionOf[other] == sectionOf[cell])) {
+                    peers[cell][count++] = other;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returnerar tabellerna för ett bräde med en given storlek.
+     *
+     * @param size Antalet rutor per rad, till exempel 4, 9, 16 eller 25.
+     * @return Tabellerna för storleken.
+     * @throws IllegalArgumentException Om storleken inte stöds.
+     */
+    static SudokuGeometry of(int size) {
+        int sectionSize = SudokuUtilities.sectionSize(size);
+        synchronized (BY_SECTION_SIZE) {
+            SudokuGeometry geometry = BY_SECTION_SIZE[sectionSize];
+            if (geometry == null) {
+                geometry = new SudokuGeometry(sectionSize);
+                BY_SECTION_SIZE[sectionSize] = geometry;
+            }
+            return geometry;
+        }
+    }
+
+    /**
+     * Returnerar masken för en siffra.
+     */
+    static long bit(int digit) {
+        return 1L << (digit - 1);
+    }
+}
@@ -0,0 +1,779 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+
+/**
+ * Betygsätter hur svårt ett pussel är för en människa genom att lösa det med
+ * {@link SudokuTechnique}s. I varje steg används den lättaste tekniken som för lösningen
+ * framåt, och teknikens vikt läggs till i poängen. Hjälper ingen teknik prövas rätt siffra
+ * i rutan med minst kandidater, vilket räknas som {@link SudokuTechnique#GUESS}.
+ * <p>
+ * Kandidaterna hålls som long-masker och alla arbetsarrayer skapas i konstruktorn, så ett
+ * betyg allokerar ingenting. En instans är inte trådsäker; för att betygsätta många pussel
+ * parallellt används en instans per tråd.
+ */
+public class SudokuGrader {
+    private static final SudokuTechnique[] TECHNIQUES = SudokuTechnique.values();
+
+    private final SudokuGeometry geometry;
+    private final int size;
+    private final int cells;
+    private final SudokuSolver solver;
+    private final int[] values;
+    private final long[] candidates;
+    private final int[] solution;
+    private final int[] givens;
+    private int empty;
+
+    private final int[] uses = new int[TECHNIQUES.length];
+    private int score;
+    private int steps;
+    private SudokuTechnique hardest;
+
+    // the step found by findStep and carried out by applyStep
+    private SudokuTechnique stepTechnique;
+    private final int[] stepCells;
+    private int stepCellCount;
+    private int placeCell;
+    private int placeDigit;
+    private final int[] removeCells;
+    private final long[] removeMasks;
+    private int removeCount;
+
+    // scratch space for the techniques
+    private final int[] picked;
+    private final int[] positions;
+    private final int[] lines;
+    private final int[] colors;
+    private final int[] queue;
+
+    /**
+     * Konstruerar en betygsättare för 9x9-bräden.
+     */
+    public SudokuGrader() {
+        this(GRID_SIZE);
+    }
+
+    /**
+     * Konstruerar en betygsättare för bräden med en given storlek.
+     *
+     * @param size Antalet rutor per rad, till exempel 4, 9, 16 eller 25.
+     * @throws IllegalArgumentException Om storleken inte stöds.
+     */
+    public SudokuGrader(int size) {
+        this.geometry = SudokuGeometry.of(size);
+        this.size = size;
+        this.cells = geometry.cells;
+        this.solver = new SudokuSolver(size);
+        this.values = new int[cells];
+        this.candidates = new long[cells];
+        this.solution = new int[cells];
+        this.givens = new int[cells];
+        this.stepCells = new int[cells];
+        this.removeCells = new int[cells];
+        this.removeMasks = new long[cells];
+        this.picked = new int[size];
+        this.positions = new int[size + 1];
+        this.lines = new int[size];
+        this.colors = new int[cells];
+        this.queue = new int[cells];
+    }
+
+    /**
+     * Returnerar storleken på brädena som betygsättaren hanterar.
+     *
+     * @return Antalet rutor per rad.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Betygsätter ett pussel.
+     *
+     * @param givens Rutorna i radordning, noll för en tom ruta. Arrayen lämnas orörd.
+     * @return Poängen, summan av vikterna för alla steg, eller -1 om pusslet bryter mot
+     *         reglerna eller saknar lösning.
+     */
+    public int grade(int[] givens) {
+        if (givens.length != cells) throw new IllegalArgumentException("cells length " + givens.length);
+        score = 0;
+        steps = 0;
+        hardest = null;
+        for (int i = 0; i < uses.length; i++) uses[i] = 0;
+
+        if (!load(givens)) return -1;
+        System.arraycopy(givens, 0, solution, 0, cells);
+        if (!solver.solve(solution)) return -1;
+
+        while (empty > 0) {
+            if (!findStep()) findGuess();
+            SudokuTechnique technique = stepTechnique;
+            uses[technique.ordinal()]++;
+            score += technique.getWeight();
+            steps++;
+            if (hardest == null || technique.compareTo(hardest) > 0) hardest = technique;
+            applyStep();
+        }
+        return score;
+    }
+
+    /**
+     * Betygsätter ett pussel i samma layout som {@link SudokuUtilities#generateSudokuMatrix(SudokuLevel)}.
+     *
+     * @param sudokuMatrix Matrisen där [row][col][0] är startvärdena.
+     * @return Poängen, eller -1 om pusslet bryter mot reglerna eller saknar lösning.
+     */
+    public int grade(int[][][] sudokuMatrix) {
+        if (sudokuMatrix.length != size) throw new IllegalArgumentException("matrix size " + sudokuMatrix.length);
+        for (int cell = 0; cell < cells; cell++) {
+            givens[cell] = sudokuMatrix[geometry.rowOf[cell]][geometry.colOf[cell]][0];
+        }
+        return grade(givens);
+    }
+
+    /**
+     * Returnerar poängen för det senast betygsatta pusslet.
+     *
+     * @return Summan av vikterna för alla steg.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returnerar antalet steg i den senaste lösningen.
+     *
+     * @return Antalet steg, ett per placerad siffra eller strykning.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returnerar den svåraste tekniken som behövdes för det senast betygsatta pusslet.
+     *
+     * @return Den svåraste tekniken, eller null om pusslet redan var löst eller ogiltigt.
+     */
+    public SudokuTechnique getHardestTechnique() {
+        return hardest;
+    }
+
+    /**
+     * Returnerar hur många gånger en teknik användes för det senast betygsatta pusslet.
+     *
+     * @param technique Tekniken.
+     * @return Antalet steg som använde tekniken.
+     */
+    public int getUses(SudokuTechnique technique) {
+        return uses[technique.ordinal()];
+    }
+
+    /**
+     * Returnerar teknikerna som användes för det senast betygsatta pusslet.
+     *
+     * @return En ny mängd med teknikerna.
+     */
+    public Set<SudokuTechnique> getTechniquesUsed() {
+        Set<SudokuTechnique> used = EnumSet.noneOf(SudokuTechnique.class);
+        for (SudokuTechnique technique : TECHNIQUES) {
+            if (uses[technique.ordinal()] > 0) used.add(technique);
+        }
+        return used;
+    }
+
+    /**
+     * Returnerar svårighetsnivån som den svåraste tekniken motsvarar: bara singlar är
+     * lätt, låsta kandidater och par eller tripplar är medel och allt svårare är svårt.
+     *
+     * @return Svårighetsnivån för det senast betygsatta pusslet.
+     */
+    public SudokuLevel getLevel() {
+        if (hardest == null || hardest.compareTo(SudokuTechnique.HIDDEN_SINGLE) <= 0) return SudokuLevel.EASY;
+        if (hardest.compareTo(SudokuTechnique.HIDDEN_TRIPLE) <= 0) return SudokuLevel.MEDIUM;
+        return SudokuLevel.HARD;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder info = new StringBuilder();
+        info.append("score ").append(score).append(", level ").append(getLevel());
+        for (SudokuTechnique technique : TECHNIQUES) {
+            if (uses[technique.ordinal()] > 0) {
+                info.append(", ").append(technique).append(" x").append(uses[technique.ordinal()]);
+            }
+        }
+        return info.toString();
+    }
+
+    /**
+     * Letar fram nästa siffra som kan placeras från en ställning, med de lättaste teknikerna
+     * först. Strykningar som behövs på vägen görs bara i betygsättarens kandidater. Antalet
+     * steg är begränsat av antalet kandidater, eftersom varje steg placerar en siffra eller
+     * stryker minst en kandidat. Resultatet hämtas med {@link #getPlacementCell()} och
+     * {@link #getPlacementDigit()}.
+     *
+     * @param position Rutorna i radordning, noll för en tom ruta. Får inte bryta mot reglerna.
+     * @param solution Lösningen, som används när ingen teknik hjälper.
+     * @param involved Markeras för rutorna i mönstren som ledde fram till siffran.
+     * @return Den svåraste tekniken som behövdes, eller null om ställningen bryter mot
+     *         reglerna eller redan är fylld.
+     */
+    /*package private*/
+    SudokuTechnique findPlacement(int[] position, int[] solution, boolean[] involved) {
+        if (!load(position)) return null;
+        System.arraycopy(solution, 0, this.solution, 0, cells);
+        SudokuTechnique needed = null;
+        int maxSteps = cells * size;
+        for (int step = 0; step < maxSteps && empty > 0; step++) {
+            if (!findStep()) findGuess();
+            if (needed == null || stepTechnique.compareTo(needed) > 0) needed = stepTechnique;
+            for (int i = 0; i < stepCellCount; i++) involved[stepCells[i]] = true;
+            if (placeCell >= 0) return needed;
+            applyStep();
+        }
+        return null;
+    }
+
+    /**
+     * Returnerar rutan som {@link #findPlacement(int[], int[], boolean[])} hittade.
+     */
+    /*package private*/
+    int getPlacementCell() {
+        return placeCell;
+    }
+
+    /**
+     * Returnerar siffran som {@link #findPlacement(int[], int[], boolean[])} hittade.
+     */
+    /*package private*/
+    int getPlacementDigit() {
+        return placeDigit;
+    }
+
+    private boolean load(int[] givens) {
+        for (int cell = 0; cell < cells; cell++) {
+            values[cell] = 0;
+            candidates[cell] = geometry.allDigits;
+        }
+        empty = cells;
+        for (int cell = 0; cell < cells; cell++) {
+            int digit = givens[cell];
+            if (digit == 0) continue;
+            if (digit < 0 || digit > size || (candidates[cell] & SudokuGeometry.bit(digit)) == 0) return false;
+            place(cell, digit);
+        }
+        return true;
+    }
+
+    private void place(int cell, int digit) {
+        values[cell] = digit;
+        candidates[cell] = 0;
+        empty--;
+        long bit = SudokuGeometry.bit(digit);
+        int[] peers = geometry.peers[cell];
+        for (int i = 0; i < peers.length; i++) {
+            candidates[peers[i]] &= ~bit;
+        }
+    }
+
+    /**
+     * Letar efter nästa steg med den lättaste tekniken som för lösningen framåt.
+     *
+     * @return Sant om ett steg hittades; tekniken, rutorna i mönstret och ändringarna
+     *         finns då i stegfälten tills nästa anrop.
+     */
+    private boolean findStep() {
+        stepCellCount = 0;
+        removeCount = 0;
+        placeCell = -1;
+        return findNakedSingle()
+                || findHiddenSingle()
+                || findPointing()
+                || findClaiming()
+                || findNakedSubset(2, SudokuTechnique.NAKED_PAIR)
+                || findHiddenSubset(2, SudokuTechnique.HIDDEN_PAIR)
+                || findNakedSubset(3, SudokuTechnique.NAKED_TRIPLE)
+                || findHiddenSubset(3, SudokuTechnique.HIDDEN_TRIPLE)
+                || findFish(2, SudokuTechnique.X_WING)
+                || findFish(3, SudokuTechnique.SWORDFISH)
+                || findXyWing()
+                || findColoring();
+    }
+
+    private void applyStep() {
+        if (placeCell >= 0) place(placeCell, placeDigit);
+        for (int i = 0; i < removeCount; i++) {
+            candidates[removeCells[i]] &= ~removeMasks[i];
+        }
+    }
+
+    private void findGuess() {
+        int best = -1;
+        for (int cell = 0; cell < cells; cell++) {
+            if (values[cell] == 0 && (best < 0 || Long.bitCount(candidates[cell]) < Long.bitCount(candidates[best]))) {
+                best = cell;
+            }
+        }
+        stepTechnique = SudokuTechnique.GUESS;
+        stepCells[0] = best;
+        stepCellCount = 1;
+        placeCell = best;
+        placeDigit = solution[best];
+    }
+
+    private boolean findNakedSingle() {
+        for (int cell = 0; cell < cells; cell++) {
+            if (values[cell] == 0 && Long.bitCount(candidates[cell]) == 1) {
+                stepTechnique = SudokuTechnique.NAKED_SINGLE;
+                stepCells[stepCellCount++] = cell;
+                placeCell = cell;
+                placeDigit = Long.numberOfTrailingZeros(candidates[cell]) + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean findHiddenSingle() {
+        for (int unit = 0; unit < geometry.units; unit++) {
+            int[] unitCells = geometry.unitCells[unit];
+            long once = 0;
+            long more = 0;
+            for (int i = 0; i < size; i++) {
+                long mask = candidates[unitCells[i]];
+                more |= once & mask;
+                once |= mask;
+            }
+            long singles = once & ~more;
+            if (singles == 0) continue;
+            long bit = Long.lowestOneBit(singles);
+            for (int i = 0; i < size; i++) {
+                if ((candidates[unitCells[i]] & bit) != 0) {
+                    stepTechnique = SudokuTechnique.HIDDEN_SINGLE;
+                    addUnitCells(unit);
+                    placeCell = unitCells[i];
+                    placeDigit = Long.numberOfTrailingZeros(bit) + 1;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean findPointing() {
+        for (int section = 0; section < size; section++) {
+            int[] sectionCells = geometry.unitCells[2 * size + section];
+            for (int digit = 1; digit <= size; digit++) {
+                long bit = SudokuGeometry.bit(digit);
+                int row = -1;
+                int col = -1;
+                int count = 0;
+                for (int i = 0; i < size; i++) {
+                    int cell = sectionCells[i];
+                    if ((candidates[cell] & bit) == 0) continue;
+                    row = count == 0 || row == geometry.rowOf[cell] ? geometry.rowOf[cell] : -2;
+                    col = count == 0 || col == geometry.colOf[cell] ? geometry.colOf[cell] : -2;
+                    count++;
+                }
+                if (count < 2) continue;
+                if (row >= 0 && removeOutside(row, 2 * size + section, bit)
+                        || col >= 0 && removeOutside(size + col, 2 * size + section, bit)) {
+                    stepTechnique = SudokuTechnique.POINTING;
+                    addCellsWith(2 * size + section, bit);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean findClaiming() {
+        for (int line = 0; line < 2 * size; line++) {
+            int[] lineCells = geometry.unitCells[line];
+            for (int digit = 1; digit <= size; digit++) {
+                long bit = SudokuGeometry.bit(digit);
+                int section = -1;
+                int count = 0;
+                for (int i = 0; i < size; i++) {
+                    int cell = lineCells[i];
+                    if ((candidates[cell] & bit) == 0) continue;
+                    section = count == 0 || section == geometry.sectionOf[cell] ? geometry.sectionOf[cell] : -2;
+                    count++;
+                }
+                if (count >= 2 && section >= 0 && removeOutside(2 * size + section, line, bit)) {
+                    stepTechnique = SudokuTechnique.CLAIMING;
+                    addCellsWith(line, bit);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stryker en siffra i de rutor i en enhet som inte också hör till en annan enhet.
+     *
+     * @return Sant om något ströks.
+     */
+    private boolean removeOutside(int unit, int keepUnit, long bit) {
+        int[] unitCells = geometry.unitCells[unit];
+        int before = removeCount;
+        for (int i = 0; i < size; i++) {
+            int cell = unitCells[i];
+            if ((candidates[cell] & bit) != 0 && !inUnit(cell, keepUnit)) addRemoval(cell, bit);
+        }
+        return removeCount > before;
+    }
+
+    private boolean findNakedSubset(int k, SudokuTechnique technique) {
+        for (int unit = 0; unit < geometry.units; unit++) {
+            int[] unitCells = geometry.unitCells[unit];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int bits = Long.bitCount(candidates[unitCells[i]]);
+                if (bits >= 2 && bits <= k) picked[count++] = unitCells[i];
+            }
+            if (count < k) continue;
+            for (int a = 0; a < count; a++) {
+                for (int b = a + 1; b < count; b++) {
+                    long pair = candidates[picked[a]] | candidates[picked[b]];
+                    if (k == 2) {
+                        if (Long.bitCount(pair) == 2 && removeNaked(unit, pair, picked[a], picked[b], -1)) {
+                            stepTechnique = technique;
+                            return true;
+                        }
+                        continue;
+                    }
+                    if (Long.bitCount(pair) > 3) continue;
+                    for (int c = b + 1; c < count; c++) {
+                        long triple = pair | candidates[picked[c]];
+                        if (Long.bitCount(triple) == 3 && removeNaked(unit, triple, picked[a], picked[b], picked[c])) {
+                            stepTechnique = technique;
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stryker kandidaterna i en naken delmängd från enhetens övriga rutor.
+     *
+     * @param third Den tredje rutan, eller -1 för ett par.
+     * @return Sant om något ströks.
+     */
+    private boolean removeNaked(int unit, long digits, int first, int second, int third) {
+        int[] unitCells = geometry.unitCells[unit];
+        for (int i = 0; i < size; i++) {
+            int cell = unitCells[i];
+            if (cell == first || cell == second || cell == third) continue;
+            if ((candidates[cell] & digits) != 0) addRemoval(cell, candidates[cell] & digits);
+        }
+        if (removeCount == 0) return false;
+        stepCells[stepCellCount++] = first;
+        stepCells[stepCellCount++] = second;
+        if (third >= 0) stepCells[stepCellCount++] = third;
+        return true;
+    }
+
+    private boolean findHiddenSubset(int k, SudokuTechnique technique) {
+        for (int unit = 0; unit < geometry.units; unit++) {
+            int[] unitCells = geometry.unitCells[unit];
+            for (int digit = 1; digit <= size; digit++) positions[digit] = 0;
+            for (int i = 0; i < size; i++) {
+                long mask = candidates[unitCells[i]];
+                while (mask != 0) {
+                    positions[Long.numberOfTrailingZeros(mask) + 1] |= 1 << i;
+                    mask &= mask - 1;
+                }
+            }
+            int count = 0;
+            for (int digit = 1; digit <= size; digit++) {
+                int bits = Integer.bitCount(positions[digit]);
+                if (bits >= 2 && bits <= k) picked[count++] = digit;
+            }
+            if (count < k) continue;
+            for (int a = 0; a < count; a++) {
+                for (int b = a + 1; b < count; b++) {
+                    int pair = positions[picked[a]] | positions[picked[b]];
+                    long pairDigits = SudokuGeometry.bit(picked[a]) | SudokuGeometry.bit(picked[b]);
+                    if (k == 2) {
+                        if (Integer.bitCount(pair) == 2 && removeHidden(unit, pair, pairDigits)) {
+                            stepTechnique = technique;
+                            return true;
+                        }
+                        continue;
+                    }
+                    if (Integer.bitCount(pair) > 3) continue;
+                    for (int c = b + 1; c < count; c++) {
+                        int triple = pair | positions[picked[c]];
+                        if (Integer.bitCount(triple) == 3
+                                && removeHidden(unit, triple, pairDigits | SudokuGeometry.bit(picked[c]))) {
+                            stepTechnique = technique;
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stryker alla andra kandidater i rutorna där en dold delmängd av siffror måste stå.
+     *
+     * @param cellPositions Rutorna som en mask över positionerna i enheten.
+     * @return Sant om något ströks.
+     */
+    private boolean removeHidden(int unit, int cellPositions, long digits) {
+        int[] unitCells = geometry.unitCells[unit];
+        for (int i = 0; i < size; i++) {
+            if ((cellPositions & (1 << i)) == 0) continue;
+            int cell = unitCells[i];
+            if ((candidates[cell] & ~digits) != 0) addRemoval(cell, candidates[cell] & ~digits);
+        }
+        if (removeCount == 0) return false;
+        for (int i = 0; i < size; i++) {
+            if ((cellPositions & (1 << i)) != 0) stepCells[stepCellCount++] = unitCells[i];
+        }
+        return true;
+    }
+
+    /**
+     * Letar efter en fisk av storlek k: k rader där siffran bara står i samma k kolumner,
+     * så att den kan strykas i resten av kolumnerna, eller samma sak med kolumner och rader.
+     */
+    private boolean findFish(int k, SudokuTechnique technique) {
+        for (int orientation = 0; orientation < 2; orientation++) {
+            int baseOffset = orientation == 0 ? 0 : size;
+            int coverOffset = orientation == 0 ? size : 0;
+            for (int digit = 1; digit <= size; digit++) {
+                long bit = SudokuGeometry.bit(digit);
+                int count = 0;
+                for (int line = 0; line < size; line++) {
+                    int[] lineCells = geometry.unitCells[baseOffset + line];
+                    int mask = 0;
+                    for (int i = 0; i < size; i++) {
+                        if ((candidates[lineCells[i]] & bit) != 0) mask |= 1 << i;
+                    }
+                    positions[line] = mask;
+                    int bits = Integer.bitCount(mask);
+                    if (bits >= 2 && bits <= k) lines[count++] = line;
+                }
+                if (count < k) continue;
+                for (int a = 0; a < count; a++) {
+                    for (int b = a + 1; b < count; b++) {
+                        int pair = positions[lines[a]] | positions[lines[b]];
+                        if (k == 2) {
+                            if (Integer.bitCount(pair) == 2
+                                    && removeFish(baseOffset, coverOffset, pair, bit, lines[a], lines[b], -1)) {
+                                stepTechnique = technique;
+                                return true;
+                            }
+                            continue;
+                        }
+                        if (Integer.bitCount(pair) > 3) continue;
+                        for (int c = b + 1; c < count; c++) {
+                            int triple = pair | positions[lines[c]];
+                            if (Integer.bitCount(triple) == 3
+                                    && removeFish(baseOffset, coverOffset, triple, bit, lines[a], lines[b], lines[c])) {
+                                stepTechnique = technique;
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean removeFish(int baseOffset, int coverOffset, int covers, long bit, int first, int second, int third) {
+        for (int cover = 0; cover < size; cover++) {
+            if ((covers & (1 << cover)) == 0) continue;
+            int[] coverCells = geometry.unitCells[coverOffset + cover];
+            for (int i = 0; i < size; i++) {
+                // position i in a cover line is the index of the base line it crosses
+                if (i == first || i == second || i == third) continue;
+                int cell = coverCells[i];
+                if ((candidates[cell] & bit) != 0) addRemoval(cell, bit);
+            }
+        }
+        if (removeCount == 0) return false;
+        addCellsWith(baseOffset + first, bit);
+        addCellsWith(baseOffset + second, bit);
+        if (third >= 0) addCellsWith(baseOffset + third, bit);
+        return true;
+    }
+
+    private boolean findXyWing() {
+        for (int pivot = 0; pivot < cells; pivot++) {
+            long pivotMask = candidates[pivot];
+            if (Long.bitCount(pivotMask) != 2) continue;
+            int[] peers = geometry.peers[pivot];
+            for (int i = 0; i < peers.length; i++) {
+                int first = peers[i];
+                long firstMask = candidates[first];
+                if (Long.bitCount(firstMask) != 2 || Long.bitCount(firstMask & pivotMask) != 1) continue;
+                long target = firstMask & ~pivotMask;
+                long secondMask = (pivotMask & ~firstMask) | target;
+                for (int j = 0; j < peers.length; j++) {
+                    int second = peers[j];
+                    if (second == first || candidates[second] != secondMask) continue;
+                    int[] firstPeers = geometry.peers[first];
+                    for (int p = 0; p < firstPeers.length; p++) {
+                        int cell = firstPeers[p];
+                        if (cell != second && cell != pivot && (candidates[cell] & target) != 0 && isPeer(cell, second)) {
+                            addRemoval(cell, target);
+                        }
+                    }
+                    if (removeCount > 0) {
+                        stepTechnique = SudokuTechnique.XY_WING;
+                        stepCells[stepCellCount++] = pivot;
+                        stepCells[stepCellCount++] = first;
+                        stepCells[stepCellCount++] = second;
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Färgar kedjor av konjugerade par, enheter där siffran bara kan stå i två rutor, med
+     * två växlande färger. Ser två rutor med samma färg varandra är den färgen fel; ser en
+     * annan ruta båda färgerna kan siffran strykas där.
+     */
+    private boolean findColoring() {
+        for (int digit = 1; digit <= size; digit++) {
+            long bit = SudokuGeometry.bit(digit);
+            for (int cell = 0; cell < cells; cell++) colors[cell] = 0;
+            int component = 0;
+            for (int start = 0; start < cells; start++) {
+                if (colors[start] != 0 || (candidates[start] & bit) == 0) continue;
+                component++;
+                int length = colorChain(start, bit, component);
+                if (length < 2) {
+                    colors[start] = 0;
+                    continue;
+                }
+                if (removeByColor(bit, component, length)) {
+                    stepTechnique = SudokuTechnique.SIMPLE_COLORING;
+                    for (int i = 0; i < length; i++) stepCells[stepCellCount++] = queue[i];
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Färgar rutorna som nås från en startruta längs konjugerade par. Färgen lagras som
+     * 2 * component + 0 eller 1, och de färgade rutorna hamnar först i queue.
+     *
+     * @return Antalet färgade rutor.
+     */
+    private int colorChain(int start, long bit, int component) {
+        int head = 0;
+        int tail = 0;
+        colors[start] = 2 * component;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            int opposite = colors[cell] ^ 1;
+            for (int kind = 0; kind < 3; kind++) {
+                int unit = kind == 0 ? geometry.rowOf[cell]
+                        : kind == 1 ? size + geometry.colOf[cell]
+                        : 2 * size + geometry.sectionOf[cell];
+                int partner = conjugate(unit, cell, bit);
+                if (partner >= 0 && colors[partner] == 0) {
+                    colors[partner] = opposite;
+                    queue[tail++] = partner;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Returnerar den andra rutan i enheten som kan ha siffran, om det finns exakt två.
+     */
+    private int conjugate(int unit, int cell, long bit) {
+        int[] unitCells = geometry.unitCells[unit];
+        int partner = -1;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int other = unitCells[i];
+            if ((candidates[other] & bit) == 0) continue;
+            if (++count > 2) return -1;
+            if (other != cell) partner = other;
+        }
+        return count == 2 ? partner : -1;
+    }
+
+    private boolean removeByColor(long bit, int component, int length) {
+        // two cells of the same colour in one unit: that colour is false everywhere
+        for (int i = 0; i < length; i++) {
+            for (int j = i + 1; j < length; j++) {
+                if (colors[queue[i]] == colors[queue[j]] && isPeer(queue[i], queue[j])) {
+                    int falseColor = colors[queue[i]];
+                    for (int c = 0; c < length; c++) {
+                        if (colors[queue[c]] == falseColor) addRemoval(queue[c], bit);
+                    }
+                    return true;
+                }
+            }
+        }
+        // an uncoloured cell that sees both colours cannot hold the digit
+        for (int cell = 0; cell < cells; cell++) {
+            if ((candidates[cell] & bit) == 0 || colors[cell] >> 1 == component) continue;
+            boolean seesEven = false;
+            boolean seesOdd = false;
+            int[] peers = geometry.peers[cell];
+            for (int i = 0; i < peers.length; i++) {
+                int color = colors[peers[i]];
+                if (color >> 1 != component) continue;
+                if ((color & 1) == 0) seesEven = true; else seesOdd = true;
+            }
+            if (seesEven && seesOdd) addRemoval(cell, bit);
+        }
+        return removeCount > 0;
+    }
+
+    private boolean isPeer(int first, int second) {
+        return geometry.rowOf[first] == geometry.rowOf[second]
+                || geometry.colOf[first] == geometry.colOf[second]
+                || geometry.sectionOf[first] == geometry.sectionOf[second];
+    }
+
+    private boolean inUnit(int cell, int unit) {
+        if (unit < size) return geometry.rowOf[cell] == unit;
+        if (unit < 2 * size) return geometry.colOf[cell] == unit - size;
+        return geometry.sectionOf[cell] == unit - 2 * size;
+    }
+
+    private void addRemoval(int cell, long mask) {
+        removeCells[removeCount] = cell;
+        removeMasks[removeCount] = mask;
+        removeCount++;
+    }
+
+    private void addUnitCells(int unit) {
+        int[] unitCells = geometry.unitCells[unit];
+        for (int i = 0; i < size; i++) stepCells[stepCellCount++] = unitCells[i];
+    }
+
+    private void addCellsWith(int unit, long bit) {
+        int[] unitCells = geometry.unitCells[unit];
+        for (int i = 0; i < size; i++) {
+            if ((candidates[unitCells[i]] & bit) != 0) stepCells[stepCellCount++] = unitCells[i];
+        }
+    }
+}
@@ -1,29 +1,276 @@
 package se.kth.qusaiaha.sudoku.model;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
 
+/**
+ * Sparar och laddar spel i ett binärt format.
+ * <pre>
+ * magic    4 byte  "SDKU"
+ * version  1 byte
+ * level    1 byte  SudokuLevel.ordinal()
+ * size     1 byte  rutor per rad, N
+ * toEnter  N*N byte lösningen, en siffra per ruta
+ * entered  inskrivna siffror, två per byte (nibbles) om N &lt; 16, annars en per byte
+ * states   StateOfBox.ordinal(), två bitar per ruta
+ * crc32    4 byte  över alla föregående byte
+ * </pre>
+ * Ett 9x9-spel tar 154 byte. Filer i version 1, som saknar size och alltid är 9x9,
+ * kan fortfarande laddas.
+ * Filen skrivs först till en temporär fil i samma katalog och flyttas sedan
+ * atomiskt över den gamla, så en avbruten sparning lämnar aldrig en halv fil.
+ * Äldre filer som sparades med Java-serialisering kan fortfarande laddas.
+ */
 public class SudokuIO {
+    private static final int MAGIC = 0x53444B55;
+    /*package private*/
+    static final byte VERSION = 2;
+    private static final byte VERSION_9X9 = 1;
+    private static final int MAX_FILE_BYTES = fileBytes(VERSION, SudokuUtilities.MAX_SECTION_SIZE * SudokuUtilities.MAX_SECTION_SIZE);
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+    private static final LatencyHistogram SAVE_TIME = Metrics.histogram("io.save");
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("io.load");
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("io.bytesWritten");
+    private static final LongAdder BYTES_READ = Metrics.counter("io.bytesRead");
 
     private SudokuIO(){
 
     }
 
+    /**
+     * Sparar spelet till en fil.
+     *
+     * @param file Filen som spelet sparas till, ingenting händer om den är null.
+     * @param model Spelet som ska sparas.
+     * @throws IOException Om filen inte kan skrivas.
+     */
     public static void SaveGame(File file, Boxes model) throws IOException {
         if (file != null) {
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-            out.writeObject(model);
-            out.close();
+            long start = System.nanoTime();
+            PersistEvent event = new PersistEvent();
+            event.begin();
+            ByteBuffer buffer = ByteBuffer.allocate(fileBytes(VERSION, model.getSize()));
+            encode(model, buffer);
+            buffer.flip();
+            int bytes = buffer.remaining();
+            writeAtomically(file.toPath(), buffer);
+            BYTES_WRITTEN.add(bytes);
+            SAVE_TIME.recordSince(start);
+            commit(event, PersistEvent.SAVE, file, model, bytes);
         }
     }
 
+    /**
+     * Laddar ett spel från en fil i det binära formatet eller från en äldre serialiserad fil.
+     *
+     * @param file Filen som spelet laddas från.
+     * @return Det laddade spelet, eller null om filen är null.
+     * @throws IOException Om filen inte kan läsas eller är skadad.
+     * @throws ClassNotFoundException Om en äldre serialiserad fil innehåller okända klasser.
+     */
     public static Boxes LoadGame(File file) throws IOException, ClassNotFoundException {
         if (file != null) {
-            Boxes model;
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-            model = (Boxes) in.readObject();
-            in.close();
-            return model;
+            long start = System.nanoTime();
+            PersistEvent event = new PersistEvent();
+            event.begin();
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_FILE_BYTES);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // read until the buffer is full or the file ends
+                }
+            }
+            buffer.flip();
+            int bytes = buffer.remaining();
+            BYTES_READ.add(bytes);
+            Boxes loaded;
+            if (buffer.remaining() >= 2 && (buffer.getShort(0) & 0xFFFF) == SERIALIZATION_MAGIC) {
+                loaded = loadLegacyGame(file);
+            } else {
+                loaded = decode(buffer);
+            }
+            LOAD_TIME.recordSince(start);
+            commit(event, PersistEvent.LOAD, file, loaded, bytes);
+            return loaded;
         }
         return null;   // Return null if the file is null}
     }
+
+    /**
+     * Skickar en händelse för en sparning eller laddning till Flight Recorder, om den spelas in.
+     */
+    private static void commit(PersistEvent event, String operation, File file, Boxes model, long bytes) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.operation = operation;
+        event.path = file.getPath();
+        event.level = model.getLevel() == null ? null : model.getLevel().name();
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    /**
+     * Returnerar storleken på en fil utan CRC för ett bräde med en given storlek.
+     */
+    private static int payloadBytes(int version, int size) {
+        int cells = size * size;
+        int header = version == VERSION_9X9 ? 4 + 1 + 1 : 4 + 1 + 1 + 1;
+        return header + cells + enteredBytes(size) + (cells + 3) / 4;
+    }
+
+    /*package private*/
+    static int fileBytes(int version, int size) {
+        return payloadBytes(version, size) + 4;
+    }
+
+    private static int enteredBytes(int size) {
+        int cells = size * size;
+        return size < 16 ? (cells + 1) / 2 : cells;
+    }
+
+    /*package private*/
+    static void encode(Boxes model, ByteBuffer buffer) {
+        int start = buffer.position();
+        int size = model.getSize();
+        int cells = size * size;
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) model.getLevel().ordinal());
+        buffer.put((byte) size);
+
+        for (int cell = 0; cell < cells; cell++) {
+            buffer.put((byte) model.toEnterAt(cell));
+        }
+        if (size < 16) {
+            for (int cell = 0; cell < cells; cell += 2) {
+                int high = model.enteredAt(cell);
+                int low = cell + 1 < cells ? model.enteredAt(cell + 1) : 0;
+                buffer.put((byte) (high << 4 | low));
+            }
+        } else {
+            for (int cell = 0; cell < cells; cell++) {
+                buffer.put((byte) model.enteredAt(cell));
+            }
+        }
+        for (int cell = 0; cell < cells; cell += 4) {
+            int packed = 0;
+            for (int i = 0; i < 4 && cell + i < cells; i++) {
+                packed |= model.stateAt(cell + i) << (2 * i);
+            }
+            buffer.put((byte) packed);
+        }
+        buffer.putInt((int) checksum(buffer, start, payloadBytes(VERSION, size)));
+    }
+
+    /*package private*/
+    static Boxes decode(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        if (buffer.remaining() < 6) throw new EOFException("truncated game data");
+        if (buffer.getInt() != MAGIC) throw new StreamCorruptedException("not a sudoku game file");
+        byte version = buffer.get();
+        if (version != VERSION && version != VERSION_9X9) {
+            throw new StreamCorruptedException("unsupported game file version " + version);
+        }
+        int size = SudokuUtilities.GRID_SIZE;
+        if (version != VERSION_9X9) {
+            if (buffer.remaining() < 2) throw new EOFException("truncated game data");
+            size = buffer.get(start + 6) & 0xFF;
+            try {
+                SudokuUtilities.sectionSize(size);
+            } catch (IllegalArgumentException e) {
+                throw new StreamCorruptedException("board size " + size);
+            }
+        }
+        int payload = payloadBytes(version, size);
+        if (buffer.limit() - start < payload + 4) throw new EOFException("truncated game data");
+        long expected = buffer.getInt(start + payload) & 0xFFFFFFFFL;
+        if (checksum(buffer, start, payload) != expected) {
+            throw new StreamCorruptedException("game file checksum mismatch");
+        }
+
+        SudokuLevel[] levels = SudokuLevel.values();
+        int stateCount = StateOfBox.values().length;
+        int levelIndex = buffer.get();
+        if (levelIndex < 0 || levelIndex >= levels.length) throw new StreamCorruptedException("level " + levelIndex);
+        if (version != VERSION_9X9) buffer.get();
+
+        int cells = size * size;
+        byte[] toEnter = new byte[cells];
+        byte[] entered = new byte[cells];
+        byte[] states = new byte[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            toEnter[cell] = checkDigit(buffer.get() & 0xFF, size);
+        }
+        if (size < 16) {
+            for (int cell = 0; cell < cells; cell += 2) {
+                int packed = buffer.get() & 0xFF;
+                entered[cell] = checkDigit(packed >>> 4, size);
+                if (cell + 1 < cells) entered[cell + 1] = checkDigit(packed & 0x0F, size);
+            }
+        } else {
+            for (int cell = 0; cell < cells; cell++) {
+                entered[cell] = checkDigit(buffer.get() & 0xFF, size);
+            }
+        }
+        for (int cell = 0; cell < cells; cell += 4) {
+            int packed = buffer.get() & 0xFF;
+            for (int i = 0; i < 4 && cell + i < cells; i++) {
+                int state = (packed >>> (2 * i)) & 0x3;
+                if (state >= stateCount) throw new StreamCorruptedException("state " + state);
+                states[cell + i] = (byte) state;
+            }
+        }
+        buffer.getInt();
+        return new Boxes(levels[levelIndex], size, toEnter, entered, states);
+    }
+
+    private static byte checkDigit(int digit, int size) throws StreamCorruptedException {
+        if (digit < 0 || digit > size) throw new StreamCorruptedException("digit " + digit);
+        return (byte) digit;
+    }
+
+    private static long checksum(ByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(start + length).position(start);
+        crc.update(slice);
+        return crc.getValue();
+    }
+
+    /*package private*/
+    static void writeAtomically(Path target, ByteBuffer buffer) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Läser en fil som sparades med Java-serialisering av äldre versioner.
+     */
+    private static Boxes loadLegacyGame(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Object model = in.readObject();
+            if (!(model instanceof Boxes)) throw new StreamCorruptedException("not a sudoku game file");
+            return (Boxes) model;
+        }
+    }
 }
@@ -0,0 +1,330 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import java.util.Arrays;
+
+import static se.kth.qusaiaha.sudoku.model.SudokuUtilities.GRID_SIZE;
+
+/**
+ * Löser Sudoku-pussel med bitmasker för rader, kolumner och block.
+ * Varje siffra motsvaras av en bit i en long, så kandidaterna för en ruta är
+ * komplementet till de använda siffrorna i rutans rad, kolumn och block.
+ * Lösaren klarar bräden från 4x4 till 25x25, se {@link SudokuGeometry}.
+ * Lösaren sätter först nakna och dolda singlar och gissar bara när det inte går
+ * vidare. All arbetsminne allokeras en gång per instans, så en sökning
+ * skapar inga objekt. En instans är inte trådsäker; använd en per tråd.
+ */
+public class SudokuSolver {
+    private final SudokuGeometry geometry;
+    private final int size;
+    private final int cells;
+    private final long allDigits;
+    private final int[] rowOf;
+    private final int[] colOf;
+    private final int[] sectionOf;
+
+    private final int[] grid;
+    private final long[] rowUsed;
+    private final long[] colUsed;
+    private final long[] sectionUsed;
+    private final int[] trail;
+    private final long[] excluded;
+    private int trailSize;
+    private long nodes;
+    private long nodeLimit = Long.MAX_VALUE;
+    private boolean aborted;
+
+    /**
+     * Konstruerar en lösare för vanliga 9x9-bräden.
+     */
+    public SudokuSolver() {
+        this(GRID_SIZE);
+    }
+
+    /**
+     * Konstruerar en lösare för bräden med en given storlek.
+     *
+     * @param size Antalet rutor per rad, till exempel 4, 9, 16 eller 25.
+     * @throws IllegalArgumentException Om storleken inte stöds.
+     */
+    public SudokuSolver(int size) {
+        this.geometry = SudokuGeometry.of(size);
+        this.size = size;
+        this.cells = geometry.cells;
+        this.allDigits = geometry.allDigits;
+        this.rowOf = geometry.rowOf;
+        this.colOf = geometry.colOf;
+        this.sectionOf = geometry.sectionOf;
+        this.grid = new int[cells];
+        this.rowUsed = new long[size];
+        this.colUsed = new long[size];
+        this.sectionUsed = new long[size];
+        this.trail = new int[cells];
+        this.excluded = new long[cells];
+    }
+
+    /**
+     * Returnerar brädets storlek.
+     *
+     * @return Antalet rutor per rad.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Löser pusslet i en matris med samma layout som
+     * {@link SudokuUtilities#generateSudokuMatrix(SudokuLevel)} returnerar.
+     * Startvärdena läses från [row][col][0] och lösningen skrivs till [row][col][1].
+     *
+     * @param sudokuMatrix Matrisen med startvärden, noll för en tom ruta.
+     * @return Sant om pusslet gick att lösa, annars falskt (matrisen lämnas då orörd).
+     */
+    public boolean solve(int[][][] sudokuMatrix) {
+        if (sudokuMatrix.length != size) throw new IllegalArgumentException("matrix size " + sudokuMatrix.length);
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        reset();
+        boolean solved = true;
+        for (int cell = 0; cell < cells && solved; cell++) {
+            solved = loadGiven(cell, sudokuMatrix[rowOf[cell]][colOf[cell]][0]);
+        }
+        int givens = trailSize;
+        solved = solved && search();
+        if (solved) {
+            for (int cell = 0; cell < cells; cell++) {
+                sudokuMatrix[rowOf[cell]][colOf[cell]][1] = grid[cell];
+            }
+        }
+        commit(event, givens, solved);
+        return solved;
+    }
+
+    /**
+     * Löser pusslet i en platt array med alla rutor i radordning, noll för en tom ruta.
+     * Lösningen skrivs tillbaka i samma array.
+     *
+     * @param cells Rutorna i radordning.
+     * @return Sant om pusslet gick att lösa, annars falskt (arrayen lämnas då orörd).
+     */
+    public boolean solve(int[] cells) {
+        if (cells.length != this.cells) throw new IllegalArgumentException("cells length " + cells.length);
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        reset();
+        boolean solved = true;
+        for (int cell = 0; cell < this.cells && solved; cell++) {
+            solved = loadGiven(cell, cells[cell]);
+        }
+        int givens = trailSize;
+        solved = solved && search();
+        if (solved) System.arraycopy(grid, 0, cells, 0, this.cells);
+        commit(event, givens, solved);
+        return solved;
+    }
+
+    /**
+     * Skickar en händelse för en lösning till Flight Recorder, om den spelas in.
+     */
+    private void commit(SolveEvent event, int givens, boolean solved) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.size = size;
+        event.givens = givens;
+        event.nodes = nodes;
+        event.solved = solved;
+        event.commit();
+    }
+
+    /**
+     * Söker en lösning där en ruta inte har en viss siffra. Om det inte finns någon sådan
+     * lösning har pusslet, med rutan tom, bara lösningen där rutan har siffran. Generatorn
+     * använder det för att visa att en borttagen ledtråd inte gör pusslet tvetydigt, vilket
+     * går mycket fortare än att räkna lösningar på stora bräden. Arrayen lämnas orörd.
+     *
+     * @param cells Rutorna i radordning, noll för en tom ruta.
+     * @param cell Rutan som inte får ha siffran.
+     * @param digit Siffran som utesluts.
+     * @return Sant om en sådan lösning finns. Falskt om ingen finns eller om sökningen
+     *         avbröts av nodgränsen, se {@link #isAborted()}.
+     */
+    /*package private*/
+    boolean hasSolutionWithout(int[] cells, int cell, int digit) {
+        if (cells.length != this.cells) throw new IllegalArgumentException("cells length " + cells.length);
+        reset();
+        excluded[cell] = SudokuGeometry.bit(digit);
+        try {
+            for (int i = 0; i < this.cells; i++) {
+                if (!loadGiven(i, cells[i])) return false;
+            }
+            return search();
+        } finally {
+            excluded[cell] = 0;
+        }
+    }
+
+    /**
+     * Begränsar antalet söknoder per lösning. En sökning som når gränsen avbryts och
+     * räknas som misslyckad.
+     *
+     * @param nodeLimit Högsta antalet söknoder.
+     */
+    /*package private*/
+    void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Returnerar om den senaste sökningen avbröts av nodgränsen.
+     *
+     * @return Sant om sökningen avbröts.
+     */
+    /*package private*/
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Returnerar antalet söknoder som den senaste lösningen besökte.
+     *
+     * @return Antalet söknoder, 1 om pusslet löstes utan gissningar.
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    private void reset() {
+        Arrays.fill(grid, 0);
+        Arrays.fill(rowUsed, 0);
+        Arrays.fill(colUsed, 0);
+        Arrays.fill(sectionUsed, 0);
+        trailSize = 0;
+        nodes = 0;
+        aborted = false;
+    }
+
+    private boolean loadGiven(int cell, int digit) {
+        if (digit == 0) return true;
+        if (digit < 0 || digit > size) return false;
+        if ((candidates(cell) & SudokuGeometry.bit(digit)) == 0) return false;
+        place(cell, digit);
+        return true;
+    }
+
+    private long candidates(int cell) {
+        return allDigits & ~(rowUsed[rowOf[cell]] | colUsed[colOf[cell]] | sectionUsed[sectionOf[cell]] | excluded[cell]);
+    }
+
+    private void place(int cell, int digit) {
+        long bit = SudokuGeometry.bit(digit);
+        grid[cell] = digit;
+        rowUsed[rowOf[cell]] |= bit;
+        colUsed[colOf[cell]] |= bit;
+        sectionUsed[sectionOf[cell]] |= bit;
+        trail[trailSize++] = cell;
+    }
+
+    private void undoTo(int mark) {
+        while (trailSize > mark) {
+            int cell = trail[--trailSize];
+            long bit = ~SudokuGeometry.bit(grid[cell]);
+            grid[cell] = 0;
+            rowUsed[rowOf[cell]] &= bit;
+            colUsed[colOf[cell]] &= bit;
+            sectionUsed[sectionOf[cell]] &= bit;
+        }
+    }
+
+    private boolean search() {
+        if (++nodes > nodeLimit) {
+            aborted = true;
+            return false;
+        }
+        int mark = trailSize;
+        if (!propagate()) {
+            undoTo(mark);
+            return false;
+        }
+
+        int best = -1;
+        long bestCandidates = 0;
+        int bestCount = size + 1;
+        for (int cell = 0; cell < cells && bestCount > 2; cell++) {
+            if (grid[cell] != 0) continue;
+            long cands = candidates(cell);
+            int count = Long.bitCount(cands);
+            if (count < bestCount) {
+                best = cell;
+                bestCandidates = cands;
+                bestCount = count;
+            }
+        }
+        if (best < 0) return true;
+
+        while (bestCandidates != 0) {
+            long bit = bestCandidates & -bestCandidates;
+            bestCandidates ^= bit;
+            int guess = trailSize;
+            place(best, Long.numberOfTrailingZeros(bit) + 1);
+            if (search()) return true;
+            undoTo(guess);
+            if (aborted) break;
+        }
+        undoTo(mark);
+        return false;
+    }
+
+    /**
+     * Sätter nakna och dolda singlar tills inget mer händer.
+     *
+     * @return Falskt om en motsägelse hittades.
+     */
+    private boolean propagate() {
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int cell = 0; cell < cells; cell++) {
+                if (grid[cell] != 0) continue;
+                long cands = candidates(cell);
+                if (cands == 0) return false;
+                if ((cands & (cands - 1)) == 0) {
+                    place(cell, Long.numberOfTrailingZeros(cands) + 1);
+                    progress = true;
+                }
+            }
+            if (progress) continue;
+
+            for (int unit = 0; unit < geometry.units; unit++) {
+                int[] unitCells = geometry.unitCells[unit];
+                long once = 0;
+                long twice = 0;
+                long used = 0;
+                for (int cell : unitCells) {
+                    if (grid[cell] != 0) {
+                        used |= SudokuGeometry.bit(grid[cell]);
+                    } else {
+                        long cands = candidates(cell);
+                        twice |= once & cands;
+                        once |= cands;
+                    }
+                }
+                if ((once | used) != allDigits) return false;
+                long hidden = once & ~twice;
+                while (hidden != 0) {
+                    long bit = hidden & -hidden;
+                    hidden ^= bit;
+                    int target = -1;
+                    for (int cell : unitCells) {
+                        if (grid[cell] == 0 && (candidates(cell) & bit) != 0) {
+                            target = cell;
+                            break;
+                        }
+                    }
+                    if (target < 0) return false;
+                    place(target, Long.numberOfTrailingZeros(bit) + 1);
+                    progress = true;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package se.kth.qusaiaha.sudoku.model;
+
+/**
+ * Lösningstekniker som en människa använder, ordnade från den lättaste till den svåraste.
+ * Varje teknik har en vikt som {@link SudokuGrader} lägger till i poängen varje gång
+ * tekniken används.
+ */
+public enum SudokuTechnique {
+    /** Rutan har bara en kandidat kvar. */
+    NAKED_SINGLE(1, "naken singel"),
+    /** Siffran kan bara stå i en ruta i en rad, kolumn eller block. */
+    HIDDEN_SINGLE(2, "dold singel"),
+    /** Siffran står bara i en rad eller kolumn inom ett block och kan strykas i resten av linjen. */
+    POINTING(4, "pekande kandidater"),
+    /** Siffran står bara i ett block inom en rad eller kolumn och kan strykas i resten av blocket. */
+    CLAIMING(5, "låsta kandidater"),
+    /** Två rutor i en enhet har samma två kandidater. */
+    NAKED_PAIR(8, "nakent par"),
+    /** Två siffror kan bara stå i samma två rutor i en enhet. */
+    HIDDEN_PAIR(10, "dolt par"),
+    /** Tre rutor i en enhet har tillsammans bara tre kandidater. */
+    NAKED_TRIPLE(12, "naken trippel"),
+    /** Tre siffror kan bara stå i samma tre rutor i en enhet. */
+    HIDDEN_TRIPLE(14, "dold trippel"),
+    /** Siffran står i samma två kolumner i två rader, eller tvärtom. */
+    X_WING(20, "X-wing"),
+    /** Siffran står i samma tre kolumner i tre rader, eller tvärtom. */
+    SWORDFISH(30, "swordfish"),
+    /** En ruta med två kandidater och två grannar som tillsammans utesluter en tredje siffra. */
+    XY_WING(35, "XY-wing"),
+    /** Kedjor av konjugerade par för en siffra, färgade växelvis. */
+    SIMPLE_COLORING(40, "färgning"),
+    /** Ingen av teknikerna hjälper och en siffra måste prövas. */
+    GUESS(100, "prövning");
+
+    private final int weight;
+    private final String displayName;
+
+    SudokuTechnique(int weight, String displayName) {
+        this.weight = weight;
+        this.displayName = displayName;
+    }
+
+    /**
+     * Returnerar teknikens vikt i poängen.
+     *
+     * @return Vikten, högre för svårare tekniker.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returnerar teknikens namn som det visas för spelaren.
+     *
+     * @return Namnet på svenska.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -6,32 +6,86 @@ public class SudokuUtilities {
     public static final int SECTIONS_PER_ROW = 3;
     public static final int SECTION_SIZE = 3;
     public static final int BOX_SIZE = 60;
+    /** The smallest and largest supported section sizes, i.e. boards from 4x4 to 25x25. */
+    public static final int MIN_SECTION_SIZE = 2;
+    public static final int MAX_SECTION_SIZE = 5;
+    private static final String DIGIT_SYMBOLS = "123456789ABCDEFGHIJKLMNOP";
+    private static final String[] DIGIT_TEXTS = new String[DIGIT_SYMBOLS.length() + 1];
+    private static final ThreadLocal<SudokuGenerator[]> generators =
+            ThreadLocal.withInitial(() -> new SudokuGenerator[MAX_SECTION_SIZE + 1]);
+
+    static {
+        DIGIT_TEXTS[0] = "";
+        for (int digit = 1; digit < DIGIT_TEXTS.length; digit++) {
+            DIGIT_TEXTS[digit] = String.valueOf(DIGIT_SYMBOLS.charAt(digit - 1));
+        }
+    }
+
     /**
      * Create a 3-dimensional matrix with initial values and solution in Sudoku.
+     * A new puzzle with a unique solution is generated for every call, see
+     * {@link SudokuGenerator}.
      *
      * @param level The level, i.e. the difficulty, of the initial standing.
      * @return A 3-dimensional int matrix.
      * [row][col][0] represents the initial values, zero representing an empty
     cell.
      * [row][col][1] represents the solution.
-     * @throws IllegalArgumentException if the length of stringRepresentation is
-    not 2*81 characters and
-     * for characters other than '0'-'9'.
      */
     public static int[][][] generateSudokuMatrix(SudokuLevel level) {
-        String representationString;
-        switch (level) {
-            case EASY: representationString = easy; break;
-            case MEDIUM: representationString = medium; break;
-            case HARD: representationString = hard; break;
-            default: representationString = medium;
+        return generateSudokuMatrix(level, GRID_SIZE);
+    }
+
+    /**
+     * Create a 3-dimensional matrix with initial values and solution for a board
+     * of the given size.
+     *
+     * @param level The level, i.e. the difficulty, of the initial standing.
+     * @param gridSize The number of cells per row, a square of a supported section size.
+     * @return A 3-dimensional int matrix, laid out as in {@link #generateSudokuMatrix(SudokuLevel)}.
+     * @throws IllegalArgumentException if the size is not supported.
+     */
+    public static int[][][] generateSudokuMatrix(SudokuLevel level, int gridSize) {
+        int sectionSize = sectionSize(gridSize);
+        SudokuGenerator[] bySize = generators.get();
+        if (bySize[sectionSize] == null) bySize[sectionSize] = new SudokuGenerator(gridSize);
+        return bySize[sectionSize].generate(level);
+    }
+
+    /**
+     * Get the section size of a board, i.e. the side of one block.
+     *
+     * @param gridSize The number of cells per row.
+     * @return The section size, the square root of gridSize.
+     * @throws IllegalArgumentException if the size is not a square of a supported section size.
+     */
+    public static int sectionSize(int gridSize) {
+        for (int sectionSize = MIN_SECTION_SIZE; sectionSize <= MAX_SECTION_SIZE; sectionSize++) {
+            if (sectionSize * sectionSize == gridSize) return sectionSize;
         }
-        return convertStringToIntMatrix(representationString);
+        throw new IllegalArgumentException("unsupported grid size " + gridSize);
     }
 
-    private static void applyVariations(int[][][] sudokuMatrix) {
-        Random random = new Random();
+    /**
+     * Get the text shown for a digit: 1-9 followed by the letters A-P for larger boards.
+     * The strings are shared, so this never allocates.
+     *
+     * @param digit The digit, 0 for an empty cell.
+     * @return The text for the digit, empty for 0.
+     */
+    public static String digitText(int digit) {
+        return DIGIT_TEXTS[digit];
+    }
 
+    /**
+     * Apply one randomly chosen variation (mirror or digit swap) to both the
+     * initial values and the solution, keeping the puzzle valid.
+     *
+     * @param sudokuMatrix The matrix to transform in place.
+     * @param random The source of randomness.
+     */
+    /*package private*/
+    static void applyVariations(int[][][] sudokuMatrix, Random random) {
         // Randomly choose a variation to apply
         int variation = random.nextInt(3);
 
@@ -43,47 +97,50 @@ public class SudokuUtilities {
                 verticalMirror(sudokuMatrix);
                 break;
             case 2:
-                swapNumbers(sudokuMatrix);
+                swapNumbers(sudokuMatrix, random);
                 break;
         }
     }
 
     private static void horizontalMirror(int[][][] sudokuMatrix) {
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE / 2; col++) {
-                int temp = sudokuMatrix[row][col][0];
-                sudokuMatrix[row][col][0] = sudokuMatrix[row][GRID_SIZE - 1 - col][0];
-                sudokuMatrix[row][GRID_SIZE - 1 - col][0] = temp;
+        int size = sudokuMatrix.length;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size / 2; col++) {
+                int[] temp = sudokuMatrix[row][col];
+                sudokuMatrix[row][col] = sudokuMatrix[row][size - 1 - col];
+                sudokuMatrix[row][size - 1 - col] = temp;
             }
         }
     }
 
     private static void verticalMirror(int[][][] sudokuMatrix) {
-        for (int row = 0; row < GRID_SIZE / 2; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                int temp = sudokuMatrix[row][col][0];
-                sudokuMatrix[row][col][0] = sudokuMatrix[GRID_SIZE - 1 - row][col][0];
-                sudokuMatrix[GRID_SIZE - 1 - row][col][0] = temp;
+        int size = sudokuMatrix.length;
+        for (int row = 0; row < size / 2; row++) {
+            for (int col = 0; col < size; col++) {
+                int[] temp = sudokuMatrix[row][col];
+                sudokuMatrix[row][col] = sudokuMatrix[size - 1 - row][col];
+                sudokuMatrix[size - 1 - row][col] = temp;
             }
         }
     }
 
-    private static void swapNumbers(int[][][] sudokuMatrix) {
-        Random random = new Random();
-
-        int number1 = random.nextInt(9) + 1;
-        int number2 = random.nextInt(9) + 1;
+    private static void swapNumbers(int[][][] sudokuMatrix, Random random) {
+        int size = sudokuMatrix.length;
+        int number1 = random.nextInt(size) + 1;
+        int number2 = random.nextInt(size) + 1;
 
         while (number1 == number2) {
-            number2 = random.nextInt(9) + 1;
+            number2 = random.nextInt(size) + 1;
         }
 
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                if (sudokuMatrix[row][col][0] == number1) {
-                    sudokuMatrix[row][col][0] = number2;
-                } else if (sudokuMatrix[row][col][0] == number2) {
-                    sudokuMatrix[row][col][0] = number1;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                for (int layer = 0; layer < 2; layer++) {
+                    if (sudokuMatrix[row][col][layer] == number1) {
+                        sudokuMatrix[row][col][layer] = number2;
+                    } else if (sudokuMatrix[row][col][layer] == number2) {
+                        sudokuMatrix[row][col][layer] = number1;
+                    }
                 }
             }
         }
@@ -138,61 +195,18 @@ public class SudokuUtilities {
                 ch);
         return ch - '0';
     }
-    private static final String easy =
-            "000914070" +
-                    "010000054" +
-                    "040002000" +
-                    "007569001" +
-                    "401000500" +
-                    "300100000" +
-                    "039000408" +
-                    "650800030" +
-                    "000403260" + // solution values after this substring
-                    "583914672" +
-                    "712386954" +
-                    "946752183" +
-                    "827569341" +
-                    "461238597" +
-                    "395147826" +
-                    "239675418" +
-                    "654821739" +
-                    "178493265";
-    private static final String medium =
-            "300000010" +
-                    "000050906" +
-                    "050401200" +
-                    "030000080" +
-                    "002069400" +
-                    "000000002" +
-                    "900610000" +
-                    "200300058" +
-                    "100800090" +
-                    "324976815" +
-                    "718253946" +
-                    "659481273" +
-                    "536142789" +
-                    "872569431" +
-                    "491738562" +
-                    "985617324" +
-                    "267394158" +
-                    "143825697";
-    private static final String hard =
-            "030600000" +
-                    "000010070" +
-                    "080000000" +
-                    "000020000" +
-                    "340000800" +
-                    "500030094" +
-                    "000400000" +
-                    "150800200" +
-                    "700006050" +
-                    "931687542" +
-                    "465219378" +
-                    "287345916" +
-                    "876924135" +
-                    "349561827" +
-                    "512738694" +
-                    "693452781" +
-                    "154873269" +
-                    "728196453";
+
+    /**
+     * Convert one byte of a text puzzle to a Sudoku value without throwing,
+     * for use by the streaming importer.
+     *
+     * @param ch A byte from the puzzle text, '0'-'9' or '.' for an empty cell.
+     * @return The value 0-9, or -1 if the byte is not a Sudoku character.
+     */
+    /*package private*/
+    static int convertByteToSudokuInt(byte ch) {
+        if (ch == '.') return 0;
+        if (ch < '0' || ch > '9') return -1;
+        return ch - '0';
+    }
 }
@@ -0,0 +1,31 @@
+package se.kth.qusaiaha.sudoku.view;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for a full repaint of the board by {@link BoardView#updateView()}.
+ * Repaints of single cells are only counted in the metrics.
+ */
+@Name("se.kth.qusaiaha.sudoku.BoardRefresh")
+@Label("Board Refresh")
+@Category({"Sudoku", "View"})
+@Description("The whole board was repainted")
+@StackTrace(false)
+/*package private*/
+final class BoardRefreshEvent extends Event {
+    @Label("Renderer")
+    String renderer;
+
+    @Label("Size")
+    @Description("Cells per row")
+    int size;
+
+    @Label("Cells Changed")
+    @Description("Cells repainted")
+    int cellsChanged;
+}
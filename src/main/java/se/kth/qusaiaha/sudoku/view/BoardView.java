@@ -0,0 +1,77 @@
+package se.kth.qusaiaha.sudoku.view;
+
+import javafx.scene.Node;
+import se.kth.qusaiaha.sudoku.controller.Controller;
+import se.kth.qusaiaha.sudoku.model.Hint;
+import se.kth.qusaiaha.sudoku.model.ReadOnlyBoxes;
+
+/**
+ * A view that shows the Sudoku board and reports which cell the user clicked.
+ * Implemented by the Label-based {@link GridView} and the single-node {@link CanvasGridView}.
+ */
+public interface BoardView {
+
+    /**
+     * Gets the node that shows the board.
+     *
+     * @return The node to place in the scene.
+     */
+    Node getNode();
+
+    /**
+     * Sets the model to show and listen to.
+     *
+     * @param model The model to be shown.
+     */
+    void setModel(ReadOnlyBoxes model);
+
+    /**
+     * Redraws every cell of the board.
+     */
+    void updateView();
+
+    /**
+     * Moves the selection highlight to the last clicked cell.
+     */
+    void updateSelection();
+
+    /**
+     * Checks if a cell has been clicked.
+     *
+     * @return True if the clicked row and column are on the board.
+     */
+    boolean isValid();
+
+    int getClickedRow();
+
+    int getClickedCol();
+
+    /**
+     * Highlights the cells involved in a hint until the selection next changes.
+     *
+     * @param hint The hint to show, or null to remove the highlight.
+     */
+    void showHint(Hint hint);
+
+    /**
+     * Shows or hides the candidates (pencil marks) of the empty cells. While shown, a cell is
+     * redrawn whenever the model reports that its candidates changed.
+     *
+     * @param showCandidates True to show the candidates.
+     */
+    void setShowCandidates(boolean showCandidates);
+
+    /**
+     * Sets the controller that clicks are reported to.
+     *
+     * @param controller The controller to be set.
+     */
+    void setController(Controller controller);
+
+    /**
+     * Sets a timer that measures the time from a change to the next laid out frame.
+     *
+     * @param frameTimer The timer, or null to stop measuring.
+     */
+    void setFrameTimer(FrameTimer frameTimer);
+}
@@ -5,14 +5,16 @@ import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.layout.VBox;
 import se.kth.qusaiaha.sudoku.controller.Controller;
 
 /**
  * Represents a set of buttons for a Sudoku game.
  */
-public class Buttons {
+public class Buttons implements ControlsView {
     private Button check, hint, clear;
+    private Label hintText, statusText;
     private Button[] numberedButton;
     private VBox leftVBox, rightVBox;
     private int selectedButton;
@@ -23,7 +25,7 @@ public class Buttons {
      */
     public Buttons() {
         initializeButtons();
-        this.leftVBox = new VBox(2, this.check, this.hint);
+        this.leftVBox = new VBox(2, this.check, this.hint, this.hintText, this.statusText);
         refineVbox(leftVBox);
         this.rightVBox = new VBox(2, numberedButton);
         this.rightVBox.getChildren().add(this.clear);
@@ -55,6 +57,7 @@ public class Buttons {
      *
      * @return The currently selected numbered button, or -1 if none is selected.
      */
+    @Override
     public int getSelectedButton() {
         return selectedButton;
     }
@@ -64,6 +67,7 @@ public class Buttons {
      *
      * @param controller The controller to be set.
      */
+    @Override
     public void setController(Controller controller) {
         this.controller = controller;
     }
@@ -72,12 +76,38 @@ public class Buttons {
         this.selectedButton = selectedButton;
     }
 
+    /**
+     * Shows the explanation of the last hint below the Hint button.
+     *
+     * @param text The explanation, or an empty string to clear it.
+     */
+    @Override
+    public void setHintText(String text) {
+        hintText.setText(text);
+    }
+
+    /**
+     * Shows the progress or outcome of saving and loading below the hint.
+     *
+     * @param text The status, or an empty string to clear it.
+     */
+    @Override
+    public void setStatusText(String text) {
+        statusText.setText(text);
+    }
+
     /**
      * Initializes the buttons (Check, Hint, Clear, Numbered buttons).
      */
     private void initializeButtons() {
         this.check = new Button("Check");
         this.hint = new Button("Hint");
+        this.hintText = new Label();
+        this.hintText.setWrapText(true);
+        this.hintText.setMaxWidth(110);
+        this.statusText = new Label();
+        this.statusText.setWrapText(true);
+        this.statusText.setMaxWidth(110);
         this.clear = new Button("C");
         this.numberedButton = new Button[9];
         for (int i=0; i<9; i++) {
@@ -112,6 +142,7 @@ public class Buttons {
         theVBox.setPadding(new Insets(10));
     }
 
+    @Override
     public boolean isValid() {
         return selectedButton>0 && selectedButton<=9;
     }
@@ -0,0 +1,272 @@
+package se.kth.qusaiaha.sudoku.view;
+
+import javafx.event.EventHandler;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import se.kth.qusaiaha.sudoku.controller.Controller;
+import se.kth.qusaiaha.sudoku.model.BoxesListener;
+import se.kth.qusaiaha.sudoku.model.Hint;
+import se.kth.qusaiaha.sudoku.model.LatencyHistogram;
+import se.kth.qusaiaha.sudoku.model.Metrics;
+import se.kth.qusaiaha.sudoku.model.ReadOnlyBoxes;
+import se.kth.qusaiaha.sudoku.model.StateOfBox;
+import se.kth.qusaiaha.sudoku.model.SudokuUtilities;
+
+/**
+ * Draws the whole board on a single Canvas. A change redraws only the rectangle of the
+ * changed cell, and a click is mapped to a cell by arithmetic instead of a node lookup,
+ * so the scene graph stays one node however many cells the board has. With candidates
+ * shown, an empty cell draws each candidate small at its own place in the cell.
+ */
+public class CanvasGridView implements BoardView {
+    private static final LatencyHistogram CELL_TIME = Metrics.histogram("view.cell");
+    private static final LatencyHistogram BOARD_TIME = Metrics.histogram("view.board");
+    private static final double BOARD_WIDTH = 306;
+    private static final double BORDER = 2;
+    private static final Color KNOWN_COLOR = Color.web("#e7e7e7");
+    private static final Color SELECTED_COLOR = Color.LIGHTBLUE;
+    private static final Color DEFAULT_COLOR = Color.WHITE;
+    private static final Color CONFLICT_COLOR = Color.RED;
+    private static final Color HINT_COLOR = Color.web("#fff3b0");
+
+    private final Canvas canvas;
+    private final GraphicsContext graphics;
+    private ReadOnlyBoxes model;
+    private int gridSize;
+    private int sectionSize;
+    private double cellSize;
+    private Font digitFont;
+    private Font candidateFont;
+    private boolean showCandidates;
+    private Hint hint;
+    private int clickedRow = -1;
+    private int clickedCol = -1;
+    private int selectedRow = -1;
+    private int selectedCol = -1;
+
+    private Controller controller;
+    private FrameTimer frameTimer;
+
+    // redraws only the cells the model reports as changed
+    private final BoxesListener modelListener = new BoxesListener() {
+        @Override
+        public void boxChanged(int row, int col) {
+            if (frameTimer != null) frameTimer.changed();
+            long start = System.nanoTime();
+            drawCell(row, col);
+            CELL_TIME.recordSince(start);
+        }
+
+        @Override
+        public void boardChanged() {
+            if (frameTimer != null) frameTimer.changed();
+            updateView();
+        }
+
+        @Override
+        public void candidatesChanged(int row, int col) {
+            if (showCandidates) {
+                long start = System.nanoTime();
+                drawCell(row, col);
+                CELL_TIME.recordSince(start);
+            }
+        }
+    };
+
+    /**
+     * Constructs a canvas view of a model.
+     *
+     * @param model The model to be shown.
+     */
+    public CanvasGridView(ReadOnlyBoxes model) {
+        this.canvas = new Canvas();
+        this.graphics = canvas.getGraphicsContext2D();
+        graphics.setTextAlign(TextAlignment.CENTER);
+        graphics.setTextBaseline(VPos.CENTER);
+        this.model = model;
+        resize();
+        addEventHandler();
+        model.addListener(modelListener);
+        updateView();
+    }
+
+    private void addEventHandler() {
+        canvas.addEventHandler(MouseEvent.MOUSE_CLICKED, new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent event) {
+                int row = (int) Math.floor((event.getY() - BORDER) / cellSize);
+                int col = (int) Math.floor((event.getX() - BORDER) / cellSize);
+                if (row < 0 || row >= gridSize || col < 0 || col >= gridSize) return;
+                clickedRow = row;
+                clickedCol = col;
+                controller.handleTheChosenSquare();
+                controller.handleGuess();
+                controller.result();
+                controller.handleClear();
+            }
+        });
+    }
+
+    /**
+     * Sizes the cells and the canvas for the current model, keeping the board about
+     * the same width whatever its size.
+     */
+    private void resize() {
+        gridSize = model.getSize();
+        sectionSize = model.getSectionSize();
+        cellSize = Math.floor(BOARD_WIDTH / gridSize);
+        double size = gridSize * cellSize + 2 * BORDER;
+        canvas.setWidth(size);
+        canvas.setHeight(size);
+        digitFont = Font.font("Monospaced", FontWeight.NORMAL, Math.round(cellSize * 10 / 17));
+        candidateFont = Font.font("Monospaced", FontWeight.NORMAL, Math.max(4, Math.floor(cellSize / (sectionSize + 1))));
+    }
+
+    @Override
+    public void updateView() {
+        long start = System.nanoTime();
+        BoardRefreshEvent event = new BoardRefreshEvent();
+        event.begin();
+        if (model != null) {
+            if (model.getSize() != gridSize) {
+                clickedRow = -1;
+                clickedCol = -1;
+                resize();
+            }
+            graphics.setFill(DEFAULT_COLOR);
+            graphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            for (int row = 0; row < gridSize; row++) {
+                for (int col = 0; col < gridSize; col++) {
+                    drawCell(row, col);
+                }
+            }
+            selectedRow = clickedRow;
+            selectedCol = clickedCol;
+        }
+        BOARD_TIME.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.renderer = "canvas";
+            event.size = gridSize;
+            event.cellsChanged = model != null ? gridSize * gridSize : 0;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void updateSelection() {
+        if (frameTimer != null) frameTimer.changed();
+        if (hint != null) showHint(null);
+        int previousRow = selectedRow;
+        int previousCol = selectedCol;
+        selectedRow = clickedRow;
+        selectedCol = clickedCol;
+        if (previousRow >= 0) drawCell(previousRow, previousCol);
+        if (isValid()) drawCell(clickedRow, clickedCol);
+    }
+
+    private void drawCell(int row, int col) {
+        double x = BORDER + col * cellSize;
+        double y = BORDER + row * cellSize;
+
+        boolean known = model.getState(row, col) == StateOfBox.KNOWN;
+        if (hint != null && hint.involves(row, col)) {
+            graphics.setFill(HINT_COLOR);
+        } else if (known) {
+            graphics.setFill(KNOWN_COLOR);
+        } else if (row == clickedRow && col == clickedCol) {
+            graphics.setFill(SELECTED_COLOR);
+        } else {
+            graphics.setFill(DEFAULT_COLOR);
+        }
+        graphics.fillRect(x, y, cellSize, cellSize);
+
+        graphics.setStroke(Color.BLACK);
+        graphics.setLineWidth(0.5);
+        graphics.strokeRect(x + 0.25, y + 0.25, cellSize - 0.5, cellSize - 0.5);
+
+        // section borders run along the cell edges, so a redrawn cell restores its part of them
+        graphics.setLineWidth(2);
+        if (col % sectionSize == 0) graphics.strokeLine(x, y, x, y + cellSize);
+        if (col % sectionSize == sectionSize - 1) graphics.strokeLine(x + cellSize, y, x + cellSize, y + cellSize);
+        if (row % sectionSize == 0) graphics.strokeLine(x, y, x + cellSize, y);
+        if (row % sectionSize == sectionSize - 1) graphics.strokeLine(x, y + cellSize, x + cellSize, y + cellSize);
+
+        int entered = model.getEntered(row, col);
+        if (showCandidates && entered == 0) {
+            drawCandidates(model.getCandidates(row, col), x, y);
+            return;
+        }
+        graphics.setFont(digitFont);
+        graphics.setFill(model.isConflicting(row, col) ? CONFLICT_COLOR : Color.BLACK);
+        graphics.fillText(SudokuUtilities.digitText(entered), x + cellSize / 2, y + cellSize / 2);
+    }
+
+    private void drawCandidates(long candidates, double x, double y) {
+        double step = cellSize / sectionSize;
+        graphics.setFont(candidateFont);
+        graphics.setFill(Color.GRAY);
+        for (int digit = 1; digit <= gridSize; digit++) {
+            if ((candidates & (1L << (digit - 1))) == 0) continue;
+            int subRow = (digit - 1) / sectionSize;
+            int subCol = (digit - 1) % sectionSize;
+            graphics.fillText(SudokuUtilities.digitText(digit), x + (subCol + 0.5) * step, y + (subRow + 0.5) * step);
+        }
+    }
+
+    @Override
+    public boolean isValid() {
+        return clickedRow >= 0 && clickedRow < gridSize && clickedCol >= 0 && clickedCol < gridSize;
+    }
+
+    @Override
+    public void setModel(ReadOnlyBoxes model) {
+        if (this.model != null) this.model.removeListener(modelListener);
+        this.model = model;
+        if (model != null) model.addListener(modelListener);
+    }
+
+    @Override
+    public int getClickedRow() {
+        return clickedRow;
+    }
+
+    @Override
+    public int getClickedCol() {
+        return clickedCol;
+    }
+
+    @Override
+    public void showHint(Hint hint) {
+        this.hint = hint;
+        updateView();
+    }
+
+    @Override
+    public void setShowCandidates(boolean showCandidates) {
+        this.showCandidates = showCandidates;
+        updateView();
+    }
+
+    @Override
+    public void setController(Controller controller) {
+        this.controller = controller;
+    }
+
+    @Override
+    public void setFrameTimer(FrameTimer frameTimer) {
+        this.frameTimer = frameTimer;
+    }
+
+    @Override
+    public Node getNode() {
+        return canvas;
+    }
+}
@@ -0,0 +1,45 @@
+package se.kth.qusaiaha.sudoku.view;
+
+import se.kth.qusaiaha.sudoku.controller.Controller;
+
+/**
+ * The buttons next to the board as the controller sees them: the selected number and the
+ * texts shown below the Hint button. Implemented by {@link Buttons}.
+ */
+public interface ControlsView {
+
+    /**
+     * Gets the currently selected numbered button.
+     *
+     * @return The selected number, 0 for Clear, or -1 if none is selected.
+     */
+    int getSelectedButton();
+
+    /**
+     * Checks if a number (not Clear) is selected.
+     *
+     * @return True if a number is selected.
+     */
+    boolean isValid();
+
+    /**
+     * Shows the explanation of the last hint.
+     *
+     * @param text The explanation, or an empty string to clear it.
+     */
+    void setHintText(String text);
+
+    /**
+     * Shows the progress or outcome of saving and loading.
+     *
+     * @param text The status, or an empty string to clear it.
+     */
+    void setStatusText(String text);
+
+    /**
+     * Sets the controller for handling button actions.
+     *
+     * @param controller The controller to be set.
+     */
+    void setController(Controller controller);
+}
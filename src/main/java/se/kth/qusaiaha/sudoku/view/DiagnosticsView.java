@@ -0,0 +1,88 @@
+package se.kth.qusaiaha.sudoku.view;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.text.Font;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
+import se.kth.qusaiaha.sudoku.model.Metrics;
+
+/**
+ * A window that shows the timers and counters in {@link Metrics}. The report is refreshed
+ * once a second while the window is open.
+ */
+public class DiagnosticsView {
+    private final Stage stage;
+    private final TextArea report;
+    private final Timeline refresh;
+
+    /**
+     * Constructs the window without showing it.
+     */
+    public DiagnosticsView() {
+        this.report = new TextArea();
+        this.report.setEditable(false);
+        this.report.setFont(Font.font("Monospaced", 12));
+        this.refresh = new Timeline(new KeyFrame(Duration.seconds(1), new EventHandler<>() {
+            @Override
+            public void handle(ActionEvent event) {
+                update();
+            }
+        }));
+        this.refresh.setCycleCount(Animation.INDEFINITE);
+
+        Button reset = new Button("Reset");
+        reset.setOnAction(new EventHandler<>() {
+            @Override
+            public void handle(ActionEvent event) {
+                Metrics.reset();
+                update();
+            }
+        });
+        HBox buttons = new HBox(reset);
+        buttons.setAlignment(Pos.CENTER_RIGHT);
+        buttons.setPadding(new Insets(5));
+
+        BorderPane root = new BorderPane(report);
+        root.setBottom(buttons);
+        this.stage = new Stage();
+        this.stage.setTitle("Diagnostics");
+        this.stage.setScene(new Scene(root, 640, 420));
+        this.stage.setOnShown(new EventHandler<>() {
+            @Override
+            public void handle(WindowEvent event) {
+                refresh.play();
+            }
+        });
+        this.stage.setOnHidden(new EventHandler<>() {
+            @Override
+            public void handle(WindowEvent event) {
+                refresh.stop();
+            }
+        });
+    }
+
+    /**
+     * Shows the window, or brings it to the front if it is already open.
+     */
+    public void show() {
+        update();
+        stage.show();
+        stage.toFront();
+    }
+
+    private void update() {
+        report.setText(Metrics.report());
+    }
+}
@@ -0,0 +1,81 @@
+package se.kth.qusaiaha.sudoku.view;
+
+import javafx.scene.Scene;
+
+import java.util.Arrays;
+
+/**
+ * Measures frame times of a board view: the time from the first change after a frame
+ * until the scene has applied CSS and layout in the next pulse. Rendering on the
+ * render thread is not included. Keeps the latest samples in a fixed ring buffer.
+ */
+public class FrameTimer {
+    private static final int SAMPLES = 4096;
+
+    private final String name;
+    private final long[] samples = new long[SAMPLES];
+    private long count;
+    private long pending = -1;
+
+    /**
+     * Constructs a timer.
+     *
+     * @param name The name used in the summary, for example the renderer.
+     */
+    public FrameTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Starts measuring at the next pulse of a scene.
+     *
+     * @param scene The scene that shows the board.
+     */
+    public void attach(Scene scene) {
+        scene.addPostLayoutPulseListener(this::frameDone);
+    }
+
+    /**
+     * Marks that the view changed. Only the first change before a pulse starts a frame.
+     */
+    public void changed() {
+        if (pending < 0) pending = System.nanoTime();
+    }
+
+    private void frameDone() {
+        if (pending >= 0) {
+            samples[(int) (count++ % SAMPLES)] = System.nanoTime() - pending;
+            pending = -1;
+        }
+    }
+
+    /**
+     * Gets the number of measured frames.
+     *
+     * @return The number of frames since the timer was created.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets a percentile of the recent frame times.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The frame time in milliseconds, or 0 if no frame was measured.
+     */
+    public double getPercentileMillis(double percentile) {
+        int size = (int) Math.min(count, SAMPLES);
+        if (size == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s frames=%d p50=%.3f ms p99=%.3f ms max=%.3f ms",
+                name, count, getPercentileMillis(50), getPercentileMillis(99), getPercentileMillis(100));
+    }
+}
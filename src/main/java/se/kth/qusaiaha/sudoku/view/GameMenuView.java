@@ -0,0 +1,59 @@
+package se.kth.qusaiaha.sudoku.view;
+
+import javafx.stage.Stage;
+import se.kth.qusaiaha.sudoku.controller.Controller;
+
+import java.io.File;
+
+/**
+ * The menu bar and the dialogs it opens, as the controller sees them.
+ * Implemented by {@link MenuView}.
+ */
+public interface GameMenuView {
+
+    /**
+     * Lets the user pick a file to save to or load from.
+     *
+     * @param title "Save Game" or "Load Game".
+     * @param stage The window that owns the dialog.
+     * @return The chosen file, or null if the user cancelled.
+     */
+    File makeFileChooser(String title, Stage stage);
+
+    /**
+     * Shows an information message without waiting for the user to close it.
+     *
+     * @param headerText The header text of the message.
+     * @param title      The title of the message window.
+     * @param content    The message.
+     */
+    void showInformation(String headerText, String title, String content);
+
+    /**
+     * Shows an error message without waiting for the user to close it.
+     *
+     * @param headerText The header text of the message.
+     * @param title      The title of the message window.
+     * @param content    What went wrong.
+     */
+    void showError(String headerText, String title, String content);
+
+    /**
+     * Shows the diagnostics window with the timers and counters of the application.
+     */
+    void showDiagnostics();
+
+    /**
+     * Disables saving and loading while a game is being saved or loaded.
+     *
+     * @param running True while a save or load is running in the background.
+     */
+    void setFileTaskRunning(boolean running);
+
+    /**
+     * Sets the controller for handling menu actions.
+     *
+     * @param controller The controller to be set.
+     */
+    void setController(Controller controller);
+}
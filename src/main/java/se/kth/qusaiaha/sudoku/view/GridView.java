@@ -1,53 +1,122 @@
 package se.kth.qusaiaha.sudoku.view;
 
+import javafx.css.PseudoClass;
 import javafx.event.EventHandler;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.TilePane;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.scene.input.MouseEvent;
-import se.kth.qusaiaha.sudoku.model.Boxes;
+import se.kth.qusaiaha.sudoku.model.BoxesListener;
+import se.kth.qusaiaha.sudoku.model.Hint;
+import se.kth.qusaiaha.sudoku.model.LatencyHistogram;
+import se.kth.qusaiaha.sudoku.model.Metrics;
+import se.kth.qusaiaha.sudoku.model.ReadOnlyBoxes;
 import se.kth.qusaiaha.sudoku.controller.*;
 
 import se.kth.qusaiaha.sudoku.model.StateOfBox;
+import se.kth.qusaiaha.sudoku.model.SudokuUtilities;
 
-public class GridView {
-    private final int GRID_SIZE = 9;
-    private final int SECTIONS_PER_ROW = 3;
-    private final int SECTION_SIZE = 3;
+/**
+ * Shows the board as one Label per cell inside one TilePane per section. The tiles are
+ * rebuilt when the model changes size, and shrink so the board keeps about the same
+ * width from 4x4 to 25x25. With candidates shown, an empty tile lists its candidates
+ * in a smaller font, one line per row of the section.
+ */
+public class GridView implements BoardView {
+    private static final double BOARD_WIDTH = 288;
+    private static final LatencyHistogram CELL_TIME = Metrics.histogram("view.cell");
+    private static final LatencyHistogram BOARD_TIME = Metrics.histogram("view.board");
+    private int gridSize;
+    private int sectionsPerRow;
+    private int sectionSize;
+    // tile colours live in grid.css, a tile only toggles these states
+    private static final PseudoClass KNOWN = PseudoClass.getPseudoClass("known");
+    private static final PseudoClass SELECTED = PseudoClass.getPseudoClass("selected");
+    private static final PseudoClass CONFLICT = PseudoClass.getPseudoClass("conflict");
+    private static final PseudoClass HINT = PseudoClass.getPseudoClass("hint");
     private Label[][] numberTiles; // the tiles/squares to show in the UI grid
+    private Font digitFont;
+    private Font candidateFont;
+    private String[] candidateTexts; // cached by candidate mask for boards up to 9x9
+    private boolean showCandidates;
+    private Hint hint;
     private GridPane numberPane;
-    private Boxes model;
+    private ReadOnlyBoxes model;
     private int clickedRow;
     private int clickedCol;
+    private int selectedRow = -1;
+    private int selectedCol = -1;
 
     private Controller controller;
+    private FrameTimer frameTimer;
 
-    public GridView(Boxes model) {
-        numberTiles = new Label[GRID_SIZE][GRID_SIZE];
+    // repaints only the tiles the model reports as changed
+    private final BoxesListener modelListener = new BoxesListener() {
+        @Override
+        public void boxChanged(int row, int col) {
+            if (frameTimer != null) frameTimer.changed();
+            long start = System.nanoTime();
+            updateTile(row, col);
+            CELL_TIME.recordSince(start);
+        }
+
+        @Override
+        public void boardChanged() {
+            if (frameTimer != null) frameTimer.changed();
+            updateView();
+        }
+
+        @Override
+        public void candidatesChanged(int row, int col) {
+            if (showCandidates) {
+                long start = System.nanoTime();
+                updateTile(row, col);
+                CELL_TIME.recordSince(start);
+            }
+        }
+    };
+
+    public GridView(ReadOnlyBoxes model) {
         this.model = model;
-        initNumberTiles();
-        numberPane = makeNumberPane();
         this.clickedCol = -1;
         this.clickedRow = -1;
+        numberPane = makeNumberPane();
+        buildTiles();
+        model.addListener(modelListener);
+        updateView();
+    }
+
+    /**
+     * Creates the tiles and sections for the size of the current model.
+     */
+    private void buildTiles() {
+        gridSize = model.getSize();
+        sectionSize = model.getSectionSize();
+        sectionsPerRow = sectionSize;
+        numberTiles = new Label[gridSize][gridSize];
+        candidateTexts = gridSize <= 9 ? new String[1 << gridSize] : null;
+        initNumberTiles();
+        numberPane.getChildren().clear();
+        addSections(numberPane);
         addEventHandler();
     }
 
     private final void initNumberTiles() {
-        Font font = Font.font("Monospaced", FontWeight.NORMAL, 20);
-        int showNumber;
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                showNumber = model.getBoxes()[row][col].getEntered();
-                String showNumberString = (showNumber != 0) ? String.valueOf(showNumber) : " ";
-                Label tile = new Label(showNumberString);
-                tile.setPrefWidth(32);
-                tile.setPrefHeight(32);
-                tile.setFont(font);
+        double tileSize = Math.floor(BOARD_WIDTH / gridSize);
+        digitFont = Font.font("Monospaced", FontWeight.NORMAL, Math.round(tileSize * 5 / 8));
+        candidateFont = Font.font("Monospaced", FontWeight.NORMAL, Math.max(4, Math.floor(tileSize / (sectionSize + 1))));
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                Label tile = new Label(SudokuUtilities.digitText(model.getEntered(row, col)));
+                tile.setPrefWidth(tileSize);
+                tile.setPrefHeight(tileSize);
+                tile.setFont(digitFont);
                 tile.setAlignment(Pos.CENTER);
-                tile.setStyle("-fx-border-color: black; -fx-border-width: 0.5px;");
+                tile.getStyleClass().add("tile");
                 tile.setOnMouseClicked(event -> {
                     int clickedRow = GridPane.getRowIndex(tile);
                     int clickedCol = GridPane.getColumnIndex(tile);
@@ -69,23 +138,26 @@ public class GridView {
     private final GridPane makeNumberPane() {
         // create the root grid pane
         GridPane root = new GridPane();
-        root.setStyle(
-                "-fx-border-color: black; -fx-border-width: 1.0px; -fx-background-color: white;");
+        root.getStylesheets().add(GridView.class.getResource("grid.css").toExternalForm());
+        root.getStyleClass().add("board");
+        return root;
+    }
 
-        // create the 3*3 sections and add the number tiles
-        for (int srow = 0; srow < SECTIONS_PER_ROW; srow++) {
-            for (int scol = 0; scol < SECTIONS_PER_ROW; scol++) {
+    private void addSections(GridPane root) {
+        // create the sections and add the number tiles
+        for (int srow = 0; srow < sectionsPerRow; srow++) {
+            for (int scol = 0; scol < sectionsPerRow; scol++) {
                 TilePane section = new TilePane();
-                section.setPrefColumns(SECTION_SIZE);
-                section.setPrefRows(SECTION_SIZE);
-                section.setStyle("-fx-border-color: black; -fx-border-width: 0.5px;");
+                section.setPrefColumns(sectionSize);
+                section.setPrefRows(sectionSize);
+                section.getStyleClass().add("section");
 
                 // add number tiles to this section
-                for (int row = 0; row < SECTION_SIZE; row++) {
-                    for (int col = 0; col < SECTION_SIZE; col++) {
+                for (int row = 0; row < sectionSize; row++) {
+                    for (int col = 0; col < sectionSize; col++) {
                         // calculate which tile and add
                         section.getChildren().add(
-                                numberTiles[srow * SECTION_SIZE + row][scol * SECTION_SIZE + col]);
+                                numberTiles[srow * sectionSize + row][scol * sectionSize + col]);
                     }
                 }
 
@@ -93,16 +165,14 @@ public class GridView {
                 root.add(section, scol, srow);
             }
         }
-
-        return root;
     }
 
     public void addEventHandler() {
         EventHandler<MouseEvent> CLickHandler = new EventHandler<MouseEvent>() {
             @Override
             public void handle(MouseEvent event) {
-                for (int row = 0; row < GRID_SIZE; row++) {
-                    for (int col = 0; col < GRID_SIZE; col++) {
+                for (int row = 0; row < gridSize; row++) {
+                    for (int col = 0; col < gridSize; col++) {
                         if (event.getSource() == numberTiles[row][col]) {
                             clickedRow = row;
                             clickedCol = col;
@@ -116,8 +186,8 @@ public class GridView {
                 }
             }
         };
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
                 numberTiles[row][col].setOnMouseClicked(CLickHandler); // add your custom event handler
             }
         }
@@ -125,59 +195,144 @@ public class GridView {
 
 
     public void updateColor() {
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                String backgroundColor;
-                if (model.getBoxes()[row][col].getStateOfbox().equals(StateOfBox.KNOWN)) {
-                    backgroundColor = "#e7e7e7";
-                } else if (row == clickedRow && col == clickedCol && !model.getBoxes()[row][col].getStateOfbox().equals(StateOfBox.KNOWN)) {
-                    backgroundColor = "lightblue";
-                } else {
-                    backgroundColor = "white";
-                }
-                numberTiles[row][col].setStyle("-fx-border-color: black; -fx-border-width: 0.5px; -fx-background-color: " + backgroundColor + ";");
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                updateTileColor(row, col);
             }
         }
     }
 
+    /**
+     * Moves the selection highlight from the previously selected tile to the clicked one,
+     * touching only those two tiles.
+     */
+    @Override
+    public void updateSelection() {
+        if (frameTimer != null) frameTimer.changed();
+        if (hint != null) showHint(null);
+        if (selectedRow >= 0) updateTileColor(selectedRow, selectedCol);
+        selectedRow = clickedRow;
+        selectedCol = clickedCol;
+        if (isValid()) updateTileColor(clickedRow, clickedCol);
+    }
+
+    private void updateTile(int row, int col) {
+        Label tile = numberTiles[row][col];
+        int entered = model.getEntered(row, col);
+        if (showCandidates && entered == 0) {
+            tile.setFont(candidateFont);
+            tile.setText(candidateText(model.getCandidates(row, col)));
+        } else {
+            tile.setFont(digitFont);
+            tile.setText(SudokuUtilities.digitText(entered));
+        }
+        updateTileColor(row, col);
+    }
+
+    private String candidateText(long candidates) {
+        if (candidateTexts != null && candidateTexts[(int) candidates] != null) {
+            return candidateTexts[(int) candidates];
+        }
+        StringBuilder text = new StringBuilder(gridSize * 2);
+        for (int digit = 1; digit <= gridSize; digit++) {
+            boolean candidate = (candidates & (1L << (digit - 1))) != 0;
+            text.append(candidate ? SudokuUtilities.digitText(digit) : " ");
+            if (digit == gridSize) break;
+            text.append(digit % sectionSize == 0 ? '\n' : ' ');
+        }
+        String result = text.toString();
+        if (candidateTexts != null) candidateTexts[(int) candidates] = result;
+        return result;
+    }
+
+    private void updateTileColor(int row, int col) {
+        Label tile = numberTiles[row][col];
+        boolean known = model.getState(row, col) == StateOfBox.KNOWN;
+        tile.pseudoClassStateChanged(KNOWN, known);
+        tile.pseudoClassStateChanged(SELECTED, !known && row == clickedRow && col == clickedCol);
+        tile.pseudoClassStateChanged(CONFLICT, model.isConflicting(row, col));
+        tile.pseudoClassStateChanged(HINT, hint != null && hint.involves(row, col));
+    }
+
+    @Override
     public boolean isValid() {
-        return getClickedRow()<=8 && getClickedRow()>=0 && getClickedCol()<=8 && getClickedCol()>=0;
+        return getClickedRow()<gridSize && getClickedRow()>=0 && getClickedCol()<gridSize && getClickedCol()>=0;
     }
 
 
+    @Override
     public void updateView() {
+        long start = System.nanoTime();
+        BoardRefreshEvent event = new BoardRefreshEvent();
+        event.begin();
         if (model != null) {
-            String displayValue;
-            for (int row = 0; row < GRID_SIZE; row++) {
-                for (int col = 0; col < GRID_SIZE; col++) {
-                    if (model.getBoxes()[row][col].getEntered() != 0) {
-                        displayValue = String.valueOf(model.getBoxes()[row][col].getEntered());
-                    } else {
-                        displayValue = "";
-                    }
-                    numberTiles[row][col].setText(displayValue);
+            if (model.getSize() != gridSize) {
+                clickedRow = -1;
+                clickedCol = -1;
+                buildTiles();
+            }
+            for (int row = 0; row < gridSize; row++) {
+                for (int col = 0; col < gridSize; col++) {
+                    updateTile(row, col);
                 }
             }
-            updateColor();
+            selectedRow = clickedRow;
+            selectedCol = clickedCol;
+        }
+        BOARD_TIME.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.renderer = "labels";
+            event.size = gridSize;
+            event.cellsChanged = model != null ? gridSize * gridSize : 0;
+            event.commit();
         }
     }
 
-    public void setModel(Boxes model) {
+    @Override
+    public void setModel(ReadOnlyBoxes model) {
+        if (this.model != null) this.model.removeListener(modelListener);
         this.model = model;
+        if (model != null) model.addListener(modelListener);
     }
 
+    @Override
     public int getClickedRow() {
         return clickedRow;
     }
 
+    @Override
     public int getClickedCol() {
         return clickedCol;
     }
 
+    @Override
+    public void showHint(Hint hint) {
+        this.hint = hint;
+        updateColor();
+    }
+
+    @Override
+    public void setShowCandidates(boolean showCandidates) {
+        this.showCandidates = showCandidates;
+        updateView();
+    }
+
+    @Override
     public void setController(Controller controller) {
         this.controller = controller;
     }
 
+    @Override
+    public void setFrameTimer(FrameTimer frameTimer) {
+        this.frameTimer = frameTimer;
+    }
+
+    @Override
+    public Node getNode() {
+        return numberPane;
+    }
+
     public GridPane getNumberPane() {
         return numberPane;
     }
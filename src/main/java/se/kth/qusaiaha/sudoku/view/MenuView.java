@@ -3,9 +3,11 @@ package se.kth.qusaiaha.sudoku.view;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.Alert;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.input.KeyCombination;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import se.kth.qusaiaha.sudoku.model.SudokuLevel;
@@ -16,11 +18,14 @@ import java.io.File;
 /**
  * Represents the view for the menu bar in the Sudoku application.
  */
-public class MenuView {
+public class MenuView implements GameMenuView {
     private Menu fileMenu, gameMenu, helpMenu, newLevel;
     private MenuBar menuBar;
     private MenuItem newGame, easy, medium, hard;
     private MenuItem exit, saveGame, loadGame, info, check, clear;
+    private MenuItem undo, redo, cancelFileTask, diagnostics;
+    private DiagnosticsView diagnosticsView;
+    private CheckMenuItem pencilMarks;
     private Controller controller;
 
     /**
@@ -45,6 +50,7 @@ public class MenuView {
      *
      * @param controller The controller to be set.
      */
+    @Override
     public void setController(Controller controller) {
         this.controller = controller;
     }
@@ -70,11 +76,19 @@ public class MenuView {
         this.info = createMenuItem("Info");
         this.check = createMenuItem("Check");
         this.clear = createMenuItem("Clear");
-
-        this.fileMenu.getItems().addAll(this.loadGame, this.saveGame, this.exit);
+        this.pencilMarks = new CheckMenuItem("Pencil Marks");
+        this.undo = createMenuItem("Undo");
+        this.undo.setAccelerator(KeyCombination.keyCombination("Shortcut+Z"));
+        this.redo = createMenuItem("Redo");
+        this.redo.setAccelerator(KeyCombination.keyCombination("Shortcut+Y"));
+        this.cancelFileTask = createMenuItem("Cancel Save/Load");
+        this.cancelFileTask.setDisable(true);
+        this.diagnostics = createMenuItem("Diagnostics");
+
+        this.fileMenu.getItems().addAll(this.loadGame, this.saveGame, this.cancelFileTask, this.exit);
         this.newLevel.getItems().addAll(this.easy, this.medium, this.hard);
-        this.gameMenu.getItems().addAll(this.newGame, this.newLevel);
-        this.helpMenu.getItems().addAll(this.info,this.check, this.clear);
+        this.gameMenu.getItems().addAll(this.undo, this.redo, this.newGame, this.newLevel, this.pencilMarks);
+        this.helpMenu.getItems().addAll(this.info,this.check, this.clear, this.diagnostics);
         this.menuBar.getMenus().addAll(this.fileMenu, this.gameMenu, this.helpMenu);
     }
 
@@ -86,6 +100,7 @@ public class MenuView {
      * @param stage The Stage object associated with the current JavaFX application window.
      * @return A File object representing the selected file if the user confirms the action, or null if the action is canceled.
      */
+    @Override
     public File makeFileChooser(String title, Stage stage) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(title);
@@ -112,6 +127,56 @@ public class MenuView {
         return alert;
     }
 
+    @Override
+    public void showInformation(String headerText, String title, String content) {
+        Alert alert = alertWindow(headerText, title);
+        alert.setContentText(content);
+        alert.show();
+    }
+
+    @Override
+    public void showError(String headerText, String title, String content) {
+        Alert alert = errorWindow(headerText, title);
+        alert.setContentText(content);
+        alert.show();
+    }
+
+    /**
+     * Creates and returns an error alert window with the specified header text and title.
+     *
+     * @param headerText The header text for the alert window.
+     * @param title      The title of the alert window.
+     * @return An error alert window.
+     */
+    public Alert errorWindow(String headerText, String title) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setHeaderText(headerText);
+        alert.setTitle(title);
+        return alert;
+    }
+
+    /**
+     * Shows the diagnostics window. It is created the first time it is shown.
+     */
+    @Override
+    public void showDiagnostics() {
+        if (diagnosticsView == null) diagnosticsView = new DiagnosticsView();
+        diagnosticsView.show();
+    }
+
+    /**
+     * Disables Save Game and Load Game while a game is being saved or loaded, and enables
+     * Cancel Save/Load until it is done.
+     *
+     * @param running True while a save or load is running in the background.
+     */
+    @Override
+    public void setFileTaskRunning(boolean running) {
+        saveGame.setDisable(running);
+        loadGame.setDisable(running);
+        cancelFileTask.setDisable(!running);
+    }
+
     /**
      * Creates a new menu with the given title.
      *
@@ -197,6 +262,30 @@ public class MenuView {
         };
         clear.setOnAction(clearAllHandler);
 
+        EventHandler<ActionEvent> undoHandler = new EventHandler<>() {
+            @Override
+            public void handle(ActionEvent event) {
+                controller.handleUndo();
+            }
+        };
+        undo.setOnAction(undoHandler);
+
+        EventHandler<ActionEvent> redoHandler = new EventHandler<>() {
+            @Override
+            public void handle(ActionEvent event) {
+                controller.handleRedo();
+            }
+        };
+        redo.setOnAction(redoHandler);
+
+        EventHandler<ActionEvent> pencilMarksHandler = new EventHandler<>() {
+            @Override
+            public void handle(ActionEvent event) {
+                controller.handleShowCandidates(pencilMarks.isSelected());
+            }
+        };
+        pencilMarks.setOnAction(pencilMarksHandler);
+
         EventHandler<ActionEvent> saveGameHandler = new EventHandler<>() {
             @Override
             public void handle(ActionEvent event) {
@@ -213,6 +302,22 @@ public class MenuView {
         };
         loadGame.setOnAction(loadGameHandler);
 
+        EventHandler<ActionEvent> cancelFileTaskHandler = new EventHandler<>() {
+            @Override
+            public void handle(ActionEvent event) {
+                controller.handleCancelFileTask();
+            }
+        };
+        cancelFileTask.setOnAction(cancelFileTaskHandler);
+
+        EventHandler<ActionEvent> diagnosticsHandler = new EventHandler<>() {
+            @Override
+            public void handle(ActionEvent event) {
+                controller.handleShowDiagnostics();
+            }
+        };
+        diagnostics.setOnAction(diagnosticsHandler);
+
         EventHandler<ActionEvent> exitHandler = new EventHandler<>() {
             @Override
             public void handle(ActionEvent event) {
@@ -0,0 +1,531 @@
+package se.kth.qusaiaha.sudoku;
+
+import javafx.scene.Node;
+import javafx.stage.Stage;
+import se.kth.qusaiaha.sudoku.controller.Controller;
+import se.kth.qusaiaha.sudoku.model.Boxes;
+import se.kth.qusaiaha.sudoku.model.Hint;
+import se.kth.qusaiaha.sudoku.model.PuzzlePool;
+import se.kth.qusaiaha.sudoku.model.ReadOnlyBoxes;
+import se.kth.qusaiaha.sudoku.model.StateOfBox;
+import se.kth.qusaiaha.sudoku.model.SudokuGenerator;
+import se.kth.qusaiaha.sudoku.model.SudokuLevel;
+import se.kth.qusaiaha.sudoku.view.BoardView;
+import se.kth.qusaiaha.sudoku.view.ControlsView;
+import se.kth.qusaiaha.sudoku.view.FrameTimer;
+import se.kth.qusaiaha.sudoku.view.GameMenuView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spelar inspelade spelsessioner mot {@link Controller} utan grafiskt gränssnitt och jämför
+ * svarstiderna och allokeringen med en sparad baslinje.
+ * <p>
+ * Vyerna ersätts av stubbar som inte skapar några JavaFX-kontroller, och resultaten av
+ * sparningar och laddningar körs i huvudtråden i stället för på JavaFX-tråden. Varje session
+ * startar ett nytt spel och gör ett antal drag: gissningar (oftast rätt siffra), rensningar,
+ * ledtrådar, ångra och gör om, kontroller, rensa allt och en sparning och laddning. För varje
+ * sorts åtgärd mäts median och 99:e percentil av tiden i kontrollern och hur många byte den
+ * allokerar i genomsnitt. De första sessionerna värmer upp JIT-kompilatorn och räknas inte.
+ * <p>
+ * En åtgärd räknas som en försämring om dess median eller 99:e percentil ökar mer än
+ * tröskeln, eller om dess allokering ökar mer än allokeringströskeln. För att små tal inte
+ * ska ge falska larm måste ökningen också vara större än {@value #LATENCY_SLACK_NANOS} ns
+ * respektive {@value #ALLOCATION_SLACK_BYTES} byte, men den marginalen är aldrig mer än
+ * hälften av baslinjens värde, så även snabba åtgärder kan larma. Då avslutas programmet
+ * med kod 1. Sparning och laddning väntar mest på disken och jämförs bara på allokeringen.
+ * Nya spel hämtas ur en full pool från en seedad generator, så sessionerna spelar
+ * samma pussel och drag vid varje körning.
+ * Baslinjen beror på maskinen och ska skrivas om med {@code --update} där den används.
+ * Den innehåller Java-versionen den mättes med. Saknas baslinjen, eller mättes den med en
+ * annan version, avslutas programmet med kod 2 utan att jämföra.
+ * <p>
+ * Exempel: {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=se.kth.qusaiaha.sudoku.RegressionHarness -Dexec.args="--sessions 40"}
+ */
+public class RegressionHarness {
+    private static final long LATENCY_SLACK_NANOS = 5_000;
+    private static final long ALLOCATION_SLACK_BYTES = 16;
+    /** Marginalen är högst den här andelen av baslinjens värde. */
+    private static final double MAX_SLACK_FRACTION = 0.5;
+    private static final String JAVA_KEY = "java.feature";
+    private static final int POOL_CAPACITY = 4;
+    /** Under så här många mätningar är den 99:e percentilen bara den största och jämförs inte. */
+    private static final int MIN_COUNT_FOR_P99 = 200;
+    /** Tiden för de här åtgärderna beror mest på disken, så bara deras allokering jämförs. */
+    private static final Set<String> DISK_OPERATIONS = Set.of("save", "load");
+    private static final String[] OPERATIONS = {
+            "newGame", "guess", "clear", "hint", "undo", "redo", "check", "clearAll", "save", "load"
+    };
+
+    private final Random random;
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final BlockingQueue<Runnable> fxQueue = new LinkedBlockingQueue<>();
+    private final StubBoard board = new StubBoard();
+    private final StubControls controls = new StubControls();
+    private final StubMenu menu = new StubMenu();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final PuzzlePool puzzlePool;
+    private final Controller controller;
+    private boolean measuring;
+    private long allocationStart;
+
+    /**
+     * Konstruerar en körning med stubbade vyer.
+     *
+     * @param seed Fröet till pusslen och dragen.
+     * @param saveFile Filen som sessionerna sparar till och laddar från.
+     */
+    public RegressionHarness(long seed, File saveFile) {
+        this.random = new Random(seed);
+        for (String operation : OPERATIONS) stats.put(operation, new Stats());
+        this.puzzlePool = new PuzzlePool(POOL_CAPACITY, new SudokuGenerator(seed));
+        Boxes model = new Boxes(SudokuLevel.EASY, puzzlePool.take(SudokuLevel.EASY));
+        board.setModel(model);
+        this.controller = new Controller(model, board, controls, menu, null, puzzlePool, null, fxQueue::add);
+        menu.file = saveFile;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int sessions = 30;
+        int warmup = 10;
+        int moves = 2000;
+        long seed = 42;
+        double threshold = 0.30;
+        double allocationThreshold = 0.10;
+        boolean update = false;
+        Path baseline = Paths.get("perf-baseline.properties");
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sessions": sessions = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--moves": moves = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--threshold": threshold = Double.parseDouble(args[++i]); break;
+                case "--allocation-threshold": allocationThreshold = Double.parseDouble(args[++i]); break;
+                case "--baseline": baseline = Paths.get(args[++i]); break;
+                case "--update": update = true; break;
+                default:
+                    System.err.println("usage: RegressionHarness [--sessions N] [--warmup N] [--moves N] [--seed S]"
+                            + " [--threshold 0.30] [--allocation-threshold 0.10] [--baseline FILE] [--update]");
+                    System.exit(2);
+            }
+        }
+
+        Properties expected = new Properties();
+        if (!update) {
+            if (!Files.exists(baseline)) {
+                System.err.println("No baseline " + baseline + "; record one with --update");
+                System.exit(2);
+            }
+            try (Reader in = Files.newBufferedReader(baseline, StandardCharsets.UTF_8)) {
+                expected.load(in);
+            }
+            String java = String.valueOf(Runtime.version().feature());
+            if (!java.equals(expected.getProperty(JAVA_KEY))) {
+                System.err.println("Baseline " + baseline + " was recorded with Java " + expected.getProperty(JAVA_KEY, "unknown")
+                        + ", not " + java + "; record it again with --update");
+                System.exit(2);
+            }
+        }
+
+        Path saveFile = Files.createTempFile("harness", ".sudoku");
+        RegressionHarness harness = new RegressionHarness(seed, saveFile.toFile());
+        try {
+            for (int session = 0; session < warmup + sessions; session++) {
+                harness.measuring = session >= warmup;
+                harness.playSession(moves);
+            }
+        } finally {
+            harness.shutdown();
+            Files.deleteIfExists(saveFile);
+        }
+
+        Properties current = harness.results();
+        if (update) {
+            try (Writer out = Files.newBufferedWriter(baseline, StandardCharsets.UTF_8)) {
+                out.write("# RegressionHarness baseline: " + sessions + " sessions of " + moves + " moves, seed " + seed
+                        + ", java " + System.getProperty("java.version") + ", " + System.getProperty("os.name")
+                        + ", " + Runtime.getRuntime().availableProcessors() + " cpus\n");
+                out.write(JAVA_KEY + "=" + Runtime.version().feature() + "\n");
+                for (String key : new TreeSet<>(current.stringPropertyNames())) {
+                    out.write(key + "=" + current.getProperty(key) + "\n");
+                }
+            }
+            harness.report(null, threshold, allocationThreshold);
+            System.out.println("Wrote baseline " + baseline);
+            return;
+        }
+        int regressions = harness.report(expected, threshold, allocationThreshold);
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) against " + baseline);
+            System.exit(1);
+        }
+        System.out.println("No regressions against " + baseline);
+    }
+
+    /**
+     * Spelar en session: ett nytt spel följt av ett antal slumpade drag, med en sparning och
+     * en laddning i mitten. Ett löst spel ersätts med ett nytt.
+     */
+    private void playSession(int moves) throws InterruptedException {
+        SudokuLevel level = SudokuLevel.values()[random.nextInt(SudokuLevel.values().length)];
+        awaitFullPool();
+        long start = begin();
+        controller.handleNewGameNewLevel(level);
+        end("newGame", start);
+
+        for (int move = 0; move < moves; move++) {
+            if (move == moves / 2) {
+                saveAndLoad();
+                continue;
+            }
+            ReadOnlyBoxes model = board.model;
+            if (model.isSolved()) {
+                awaitFullPool();
+                start = begin();
+                controller.handleNewGame();
+                end("newGame", start);
+                continue;
+            }
+            int choice = random.nextInt(100);
+            if (choice < 60) {
+                guess(model);
+            } else if (choice < 75) {
+                clear(model);
+            } else if (choice < 83) {
+                start = begin();
+                controller.handleHint();
+                controller.result();
+                end("hint", start);
+            } else if (choice < 90) {
+                start = begin();
+                controller.handleUndo();
+                end("undo", start);
+            } else if (choice < 95) {
+                start = begin();
+                controller.handleRedo();
+                end("redo", start);
+            } else if (choice < 99) {
+                start = begin();
+                controller.handleCheck();
+                end("check", start);
+            } else {
+                start = begin();
+                controller.handleClearAll();
+                end("clearAll", start);
+            }
+        }
+    }
+
+    /**
+     * Skriver in en siffra i en slumpad ruta som inte är given, oftast den rätta.
+     */
+    private void guess(ReadOnlyBoxes model) {
+        int size = model.getSize();
+        int row = random.nextInt(size);
+        int col = random.nextInt(size);
+        if (model.getState(row, col) == StateOfBox.KNOWN) return;
+        controls.selected = random.nextInt(10) < 8 ? model.getToEnter(row, col) : 1 + random.nextInt(size);
+        long start = begin();
+        click(row, col);
+        end("guess", start);
+    }
+
+    private void clear(ReadOnlyBoxes model) {
+        int size = model.getSize();
+        int row = random.nextInt(size);
+        int col = random.nextInt(size);
+        controls.selected = 0;
+        long start = begin();
+        click(row, col);
+        end("clear", start);
+    }
+
+    /**
+     * Gör samma anrop som brädet gör när användaren klickar på en ruta.
+     */
+    private void click(int row, int col) {
+        board.clickedRow = row;
+        board.clickedCol = col;
+        controller.handleTheChosenSquare();
+        controller.handleGuess();
+        controller.result();
+        controller.handleClear();
+    }
+
+    /**
+     * Sparar och laddar spelet. Bara tiden i kontrollern räknas; skrivningen till disken
+     * sker i bakgrunden och väntas ut utan att mätas.
+     */
+    private void saveAndLoad() throws InterruptedException {
+        long start = begin();
+        controller.handleSaveGame();
+        end("save", start);
+        awaitFileTask();
+        start = begin();
+        controller.handleLoadGame();
+        end("load", start);
+        awaitFileTask();
+    }
+
+    /**
+     * Kör resultaten från bakgrundstråden, som JavaFX-tråden annars skulle ha kört,
+     * tills sparningen eller laddningen är klar.
+     */
+    private void awaitFileTask() throws InterruptedException {
+        while (menu.fileTaskRunning) {
+            Runnable callback = fxQueue.poll(10, TimeUnit.SECONDS);
+            if (callback == null) throw new IllegalStateException("save or load did not finish");
+            callback.run();
+        }
+        if (menu.lastError != null) throw new IllegalStateException("save or load failed: " + menu.lastError);
+    }
+
+    /**
+     * Väntar tills poolen är full, så att varje nytt spel får nästa pussel från den seedade
+     * generatorn i samma ordning vid varje körning i stället för ett som genereras direkt.
+     */
+    private void awaitFullPool() throws InterruptedException {
+        for (SudokuLevel level : SudokuLevel.values()) {
+            while (puzzlePool.available(level) < POOL_CAPACITY) Thread.sleep(1);
+        }
+    }
+
+    private long begin() {
+        allocationStart = threads.getCurrentThreadAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    private void end(String operation, long start) {
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocationStart;
+        if (measuring) stats.get(operation).add(elapsed, allocated);
+    }
+
+    private void shutdown() {
+        controller.shutdown();
+        puzzlePool.shutdown();
+    }
+
+    /**
+     * Returnerar resultaten i samma form som baslinjefilen.
+     */
+    private Properties results() {
+        Properties results = new Properties();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats operationStats = entry.getValue();
+            if (operationStats.count == 0) continue;
+            results.setProperty(entry.getKey() + ".p50Nanos", Long.toString(operationStats.percentile(0.50)));
+            results.setProperty(entry.getKey() + ".p99Nanos", Long.toString(operationStats.percentile(0.99)));
+            results.setProperty(entry.getKey() + ".bytesPerOp", Long.toString(operationStats.bytesPerOperation()));
+        }
+        return results;
+    }
+
+    /**
+     * Skriver en tabell över resultaten och jämför dem med baslinjen om det finns en.
+     *
+     * @return Antalet försämringar.
+     */
+    private int report(Properties baseline, double threshold, double allocationThreshold) {
+        Properties current = results();
+        int regressions = 0;
+        System.out.printf("%-10s %8s %10s %10s %12s%n", "operation", "count", "p50 ns", "p99 ns", "bytes/op");
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            String operation = entry.getKey();
+            if (entry.getValue().count == 0) continue;
+            System.out.printf("%-10s %8d %10s %10s %12s%n", operation, entry.getValue().count,
+                    current.getProperty(operation + ".p50Nanos"), current.getProperty(operation + ".p99Nanos"),
+                    current.getProperty(operation + ".bytesPerOp"));
+            if (baseline == null) continue;
+            if (!DISK_OPERATIONS.contains(operation)) {
+                regressions += compare(baseline, current, operation + ".p50Nanos", threshold, LATENCY_SLACK_NANOS);
+            }
+            if (entry.getValue().count >= MIN_COUNT_FOR_P99) {
+                regressions += compare(baseline, current, operation + ".p99Nanos", threshold, LATENCY_SLACK_NANOS);
+            }
+            regressions += compare(baseline, current, operation + ".bytesPerOp", allocationThreshold, ALLOCATION_SLACK_BYTES);
+        }
+        return regressions;
+    }
+
+    private static int compare(Properties baseline, Properties current, String key, double threshold, long slack) {
+        String expected = baseline.getProperty(key);
+        if (expected == null) return 0;
+        long before = Long.parseLong(expected);
+        long now = Long.parseLong(current.getProperty(key));
+        if (now > before * (1 + threshold) && now - before > Math.min(slack, (long) (before * MAX_SLACK_FRACTION))) {
+            System.out.printf("  REGRESSION %s: %d -> %d (+%.0f%%)%n", key, before, now, 100.0 * (now - before) / Math.max(1, before));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Tider och allokering för en sorts åtgärd.
+     */
+    private static final class Stats {
+        private long[] nanos = new long[1024];
+        private int count;
+        private long allocatedBytes;
+
+        void add(long elapsed, long allocated) {
+            if (count == nanos.length) nanos = Arrays.copyOf(nanos, 2 * count);
+            nanos[count++] = elapsed;
+            allocatedBytes += allocated;
+        }
+
+        long percentile(double fraction) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) (fraction * count))];
+        }
+
+        long bytesPerOperation() {
+            return allocatedBytes / count;
+        }
+    }
+
+    /**
+     * Ett bräde utan noder som bara kommer ihåg modellen och den klickade rutan.
+     */
+    private static final class StubBoard implements BoardView {
+        private ReadOnlyBoxes model;
+        private int clickedRow = -1;
+        private int clickedCol = -1;
+
+        @Override
+        public Node getNode() {
+            return null;
+        }
+
+        @Override
+        public void setModel(ReadOnlyBoxes model) {
+            this.model = model;
+        }
+
+        @Override
+        public void updateView() {
+        }
+
+        @Override
+        public void updateSelection() {
+        }
+
+        @Override
+        public boolean isValid() {
+            return clickedRow >= 0 && clickedCol >= 0;
+        }
+
+        @Override
+        public int getClickedRow() {
+            return clickedRow;
+        }
+
+        @Override
+        public int getClickedCol() {
+            return clickedCol;
+        }
+
+        @Override
+        public void showHint(Hint hint) {
+        }
+
+        @Override
+        public void setShowCandidates(boolean showCandidates) {
+        }
+
+        @Override
+        public void setController(Controller controller) {
+        }
+
+        @Override
+        public void setFrameTimer(FrameTimer frameTimer) {
+        }
+    }
+
+    /**
+     * Knappar där den valda siffran sätts av sessionen.
+     */
+    private static final class StubControls implements ControlsView {
+        private int selected = -1;
+
+        @Override
+        public int getSelectedButton() {
+            return selected;
+        }
+
+        @Override
+        public boolean isValid() {
+            return selected > 0;
+        }
+
+        @Override
+        public void setHintText(String text) {
+        }
+
+        @Override
+        public void setStatusText(String text) {
+        }
+
+        @Override
+        public void setController(Controller controller) {
+        }
+    }
+
+    /**
+     * En meny vars fildialog alltid väljer samma fil och vars meddelanden inte visas.
+     */
+    private static final class StubMenu implements GameMenuView {
+        private File file;
+        private boolean fileTaskRunning;
+        private String lastError;
+
+        @Override
+        public File makeFileChooser(String title, Stage stage) {
+            return file;
+        }
+
+        @Override
+        public void showInformation(String headerText, String title, String content) {
+        }
+
+        @Override
+        public void showError(String headerText, String title, String content) {
+            lastError = headerText + ": " + content;
+        }
+
+        @Override
+        public void showDiagnostics() {
+        }
+
+        @Override
+        public void setFileTaskRunning(boolean running) {
+            fileTaskRunning = running;
+        }
+
+        @Override
+        public void setController(Controller controller) {
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package se.kth.qusaiaha.sudoku.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class GameJournalTest {
+    private static final int MOVES = 10;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void recoversMovesFromJournal() throws IOException {
+        Boxes model = newGame();
+        try (GameJournal journal = new GameJournal(directory)) {
+            journal.attach(model);
+            play(model, MOVES);
+        }
+
+        assertSameBoard(model, GameJournal.recover(directory));
+    }
+
+    @Test
+    void stopsAtTornRecord() throws IOException {
+        Boxes model = newGame();
+        Boxes beforeLastMove;
+        try (GameJournal journal = new GameJournal(directory)) {
+            journal.attach(model);
+            play(model, MOVES - 1);
+            beforeLastMove = model.copy();
+            play(model, 1);
+        }
+        // cut the last record in half, as a crash in the middle of a write would
+        Path journalFile = directory.toPath().resolve("last.journal");
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+
+        assertSameBoard(beforeLastMove, GameJournal.recover(directory));
+    }
+
+    @Test
+    void skipsJournalOfOtherSnapshot() throws IOException {
+        Boxes model = newGame();
+        Boxes atSnapshot = model.copy();
+        try (GameJournal journal = new GameJournal(directory)) {
+            journal.attach(model);
+            play(model, MOVES);
+        }
+        // the journal now claims to belong to a snapshot that was replaced
+        Path journalFile = directory.toPath().resolve("last.journal");
+        byte[] bytes = Files.readAllBytes(journalFile);
+        bytes[4] ^= 1;
+        Files.write(journalFile, bytes);
+
+        assertSameBoard(atSnapshot, GameJournal.recover(directory));
+    }
+
+    @Test
+    void rebuildsJournalAfterFailedFlush() throws IOException, InterruptedException {
+        // a non-empty directory in the way of the snapshot makes the first flush fail
+        Path blocker = directory.toPath().resolve("last.sudoku");
+        Files.createDirectories(blocker.resolve("blocked"));
+        Boxes model = newGame();
+        try (GameJournal journal = new GameJournal(directory)) {
+            journal.attach(model);
+            Thread.sleep(3 * GameJournal.FLUSH_MILLIS);
+            Files.delete(blocker.resolve("blocked"));
+            Files.delete(blocker);
+            play(model, MOVES);
+        }
+
+        assertSameBoard(model, GameJournal.recover(directory));
+    }
+
+    private static Boxes newGame() {
+        return new Boxes(SudokuLevel.EASY, new SudokuGenerator(42L).generate(SudokuLevel.EASY));
+    }
+
+    /**
+     * Fyller i de första tomma rutorna med rätt siffra.
+     */
+    private static void play(Boxes model, int moves) {
+        int size = model.getSize();
+        for (int cell = 0; cell < size * size && moves > 0; cell++) {
+            int row = cell / size;
+            int col = cell % size;
+            if (model.getState(row, col) == StateOfBox.KNOWN || model.getEntered(row, col) != 0) continue;
+            model.enter(row, col, model.getToEnter(row, col));
+            moves--;
+        }
+    }
+
+    private static void assertSameBoard(Boxes expected, Boxes actual) {
+        assertNotNull(actual);
+        int size = expected.getSize();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                assertEquals(expected.getEntered(row, col), actual.getEntered(row, col), "entered at " + row + "," + col);
+                assertEquals(expected.getState(row, col), actual.getState(row, col), "state at " + row + "," + col);
+            }
+        }
+    }
+}